@@ -55,6 +55,7 @@ plugins {
     id("org.jetbrains.dokka") version "1.8.20"
     id("com.github.johnrengelman.shadow") version "8.1.1"
     id("io.github.gradle-nexus.publish-plugin") version "1.1.0"
+    id("me.champeau.jmh") version "0.7.2"
     `maven-publish`
     signing
     jacoco
@@ -73,10 +74,15 @@ kotlin {
 
 jacoco.toolVersion = "0.8.8"
 
+val binaryLanguageModelsDirectory = layout.buildDirectory.dir("generated/resources/binary-language-models")
+
 sourceSets {
     main {
         resources {
             exclude("training-data/**")
+            // the compact binary language models generated at build time replace the JSON ones
+            exclude("language-models/**/*.json")
+            srcDir(binaryLanguageModelsDirectory)
         }
     }
     create("accuracyReport") {
@@ -98,6 +104,26 @@ tasks.withType<Test> {
     useJUnitPlatform { failFast = true }
 }
 
+val writeBinaryLanguageModels by tasks.registering(JavaExec::class) {
+    group = linguaTaskGroup
+    description = "Converts the JSON language models into the binary format which is loaded at runtime."
+
+    val jsonLanguageModelsDirectory = file("src/main/resources/language-models")
+    val outputDirectory = binaryLanguageModelsDirectory.get().dir("language-models").asFile
+
+    inputs.dir(jsonLanguageModelsDirectory)
+    outputs.dir(outputDirectory)
+    mainClass.set("com.github.pemistahl.lingua.internal.io.BinaryLanguageModelConverterKt")
+    classpath = sourceSets.main.get().output.classesDirs + configurations.runtimeClasspath.get()
+    args(jsonLanguageModelsDirectory.absolutePath, outputDirectory.absolutePath)
+
+    doFirst { delete(outputDirectory) }
+}
+
+tasks.processResources {
+    dependsOn(writeBinaryLanguageModels)
+}
+
 tasks.test {
     maxParallelForks = 1
 }
@@ -190,6 +216,30 @@ tasks.register<Test>("accuracyReport") {
         )
     }
 
+    val allowedLanguageModelModes = listOf("quantized", "feature-hashed")
+    if (project.hasProperty("languageModelMode")) {
+        val languageModelMode = project.property("languageModelMode").toString()
+        if (languageModelMode !in allowedLanguageModelModes) {
+            throw GradleException(
+                """
+                language model mode '$languageModelMode' does not exist
+                supported language model modes: ${allowedLanguageModelModes.joinToString(", ")}
+                """.trimIndent()
+            )
+        }
+        systemProperty("lingua.languageModelMode", languageModelMode)
+    }
+
+    val bucketCountRepr = if (project.hasProperty("bucketCount"))
+        project.property("bucketCount").toString()
+    else "131072"
+
+    val bucketCount = bucketCountRepr.toIntOrNull()
+    if (bucketCount == null || bucketCount < 1) {
+        throw GradleException("'$bucketCountRepr' is not a valid value for argument -PbucketCount")
+    }
+    systemProperty("lingua.bucketCount", bucketCount)
+
     maxHeapSize = "4096m"
     maxParallelForks = cpuCores
     reports.html.required.set(false)
@@ -307,6 +357,54 @@ tasks.register<ShadowJar>("jarWithDependencies") {
     manifest { attributes("Main-Class" to linguaMainClass) }
 }
 
+tasks.register<JavaExec>("languageModelPruningReport") {
+    group = linguaTaskGroup
+    description = "Prunes the language models to several memory budgets, and prints the detection accuracy for each."
+    mainClass.set("com.github.pemistahl.lingua.report.LanguageModelPruningReportKt")
+    classpath = sourceSets["accuracyReport"].runtimeClasspath
+
+    val allowedLanguages = linguaSupportedLanguages.split(',')
+    val languages = if (project.hasProperty("languages"))
+        project.property("languages").toString().split(Regex("\\s*,\\s*"))
+    else allowedLanguages
+
+    languages.filterNot { it in allowedLanguages }.forEach {
+        throw GradleException("language '$it' is not supported")
+    }
+    if (languages.size < 2) {
+        throw GradleException("at least two languages are needed for language detection")
+    }
+
+    val memoryBudgets = if (project.hasProperty("memoryBudgets"))
+        project.property("memoryBudgets").toString()
+    else "4096,2048,1024,512,256"
+
+    memoryBudgets.split(',').filter { it.trim().toLongOrNull()?.takeIf { budget -> budget >= 0 } == null }.forEach {
+        throw GradleException("'$it' is not a valid value for argument -PmemoryBudgets")
+    }
+
+    args(
+        file("src/main/resources/language-models").absolutePath,
+        layout.buildDirectory.dir("pruned-language-models").get().asFile.absolutePath,
+        memoryBudgets,
+        languages.joinToString(",")
+    )
+    maxHeapSize = "4096m"
+}
+
+tasks.register<JavaExec>("languageModelMemoryBenchmark") {
+    group = linguaTaskGroup
+    description = "Measures the heap used by the language models of all languages in each language model mode."
+    mainClass.set("com.github.pemistahl.lingua.benchmark.LanguageModelMemoryBenchmarkKt")
+    classpath = sourceSets["jmh"].runtimeClasspath
+    maxHeapSize = "8192m"
+}
+
+jmh {
+    jmhVersion.set("1.37")
+    jvmArgs.add("-Xmx4096m")
+}
+
 tasks.register<JavaExec>("runLinguaOnConsole") {
     group = linguaTaskGroup
     description = "Starts a REPL (read-evaluate-print loop) to try Lingua on the command line."
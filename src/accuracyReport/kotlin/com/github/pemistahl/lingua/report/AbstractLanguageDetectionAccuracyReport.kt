@@ -90,7 +90,11 @@ abstract class AbstractLanguageDetectionAccuracyReport(
     fun afterAll() {
         val projectRootPath = Paths.get("").toAbsolutePath().toString()
         val accuracyReportsDirectoryName = "accuracy-reports"
-        val detectorDirectoryName = implementationToUse.name.lowercase()
+        val detectorDirectoryName = if (implementationToUse == LINGUA && languageModelMode != null) {
+            "${implementationToUse.name.lowercase()}-$languageModelMode"
+        } else {
+            implementationToUse.name.lowercase()
+        }
         val languageReportFileName = "${language.name.lowercase().replaceFirstChar { it.titlecase() }}.txt"
         val accuracyReportsDirectoryPath = Paths.get(
             projectRootPath,
@@ -324,6 +328,8 @@ abstract class AbstractLanguageDetectionAccuracyReport(
             it.isoCode639_1
         }.toTypedArray()
 
+        private val languageModelMode: String? = System.getProperty("lingua.languageModelMode")
+
         private val filteredIsoCodesForTikaAndOptimaize = languageIsoCodesToTest.filterNot {
             it in setOf(AM, AZ, BS, EO, HY, KA, KK, LA, LG, MI, MN, NB, NN, OM, SI, SN, ST, TI, TN, TS, XH, YO, ZU)
         }.map { it.toString() }
@@ -332,15 +338,24 @@ abstract class AbstractLanguageDetectionAccuracyReport(
             LanguageDetectorBuilder
                 .fromIsoCodes639_1(*languageIsoCodesToTest)
                 .withLowAccuracyMode()
+                .withLanguageModelMode()
                 .build()
         }
 
         internal val linguaDetectorWithHighAccuracy by lazy {
             LanguageDetectorBuilder
                 .fromIsoCodes639_1(*languageIsoCodesToTest)
+                .withLanguageModelMode()
                 .build()
         }
 
+        private fun LanguageDetectorBuilder.withLanguageModelMode() = when (languageModelMode) {
+            null -> this
+            "quantized" -> withQuantizedLanguageModels()
+            "feature-hashed" -> withFeatureHashedLanguageModels(System.getProperty("lingua.bucketCount").toInt())
+            else -> throw IllegalArgumentException("language model mode '$languageModelMode' is not supported")
+        }
+
         private val textObjectFactory by lazy {
             CommonTextObjectFactories.forDetectingShortCleanText()
         }
@@ -0,0 +1,97 @@
+/*
+ * Copyright © 2018-today Peter M. Stahl pemistahl@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either expressed or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pemistahl.lingua.report
+
+import com.github.pemistahl.lingua.api.Language
+import com.github.pemistahl.lingua.api.LanguageDetector
+import com.github.pemistahl.lingua.api.LanguageDetectorBuilder
+import com.github.pemistahl.lingua.api.io.LanguageModelFilesPruner
+import java.nio.file.Files
+import java.nio.file.Paths
+import java.util.Locale
+
+private val testDataCategories = listOf("single-words", "word-pairs", "sentences")
+
+/**
+ * Prunes the language models of the given languages to several memory budgets
+ * and prints the detection accuracy on the test data for each of them.
+ *
+ * Arguments:
+ * 1. the directory of the unpruned language models
+ * 2. the directory to write the pruned language models to
+ * 3. a comma-separated list of memory budgets per language in kilobytes
+ * 4. a comma-separated list of language names
+ */
+fun main(args: Array<String>) {
+    val (inputDirectoryPath, outputDirectoryPath) = args.take(2).map { Paths.get(it).toAbsolutePath() }
+    val memoryBudgets = args[2].split(',').map { it.trim().toLong() * 1024 }
+    val languages = args[3].split(',').map { Language.valueOf(it.trim().uppercase(Locale.ROOT)) }
+
+    println("Detection accuracy of pruned language models of ${languages.size} languages:\n")
+    println(
+        "%-12s %12s %10s %14s %12s %11s".format(
+            "budget", "size", "average", "single words", "word pairs", "sentences"
+        )
+    )
+
+    for (memoryBudget in listOf(Long.MAX_VALUE) + memoryBudgets) {
+        val budgetName = if (memoryBudget == Long.MAX_VALUE) "unpruned" else "${memoryBudget / 1024} KB"
+        val prunedDirectoryPath = outputDirectoryPath.resolve(budgetName.replace(" ", "").lowercase(Locale.ROOT))
+
+        var sizeInBytes = 0L
+        for (language in languages) {
+            val languageDirectoryPath = prunedDirectoryPath.resolve(language.isoCode639_1.toString())
+            Files.createDirectories(languageDirectoryPath)
+            sizeInBytes += LanguageModelFilesPruner.pruneAndWriteLanguageModelFiles(
+                inputDirectoryPath = inputDirectoryPath.resolve(language.isoCode639_1.toString()),
+                outputDirectoryPath = languageDirectoryPath,
+                maximumSizeInBytes = memoryBudget
+            )
+        }
+
+        val detector = LanguageDetectorBuilder
+            .fromLanguages(*languages.toTypedArray())
+            .withLanguageModelsFromDirectory(prunedDirectoryPath)
+            .build()
+        val accuracies = testDataCategories.map { category ->
+            languages.map { computeAccuracy(detector, it, category) }.average()
+        }
+        detector.unloadLanguageModels()
+
+        println(
+            "%-12s %,9.1f MB %9.2f%% %13.2f%% %11.2f%% %10.2f%%".format(
+                budgetName,
+                sizeInBytes / (1024.0 * 1024.0),
+                accuracies.average() * 100,
+                accuracies[0] * 100,
+                accuracies[1] * 100,
+                accuracies[2] * 100
+            )
+        )
+    }
+}
+
+private fun computeAccuracy(detector: LanguageDetector, language: Language, category: String): Double {
+    val resource = "/language-testdata/$category/${language.isoCode639_1}.txt"
+    val lines = checkNotNull(LanguageDetector::class.java.getResourceAsStream(resource)) {
+        "Test data '$resource' does not exist"
+    }.bufferedReader().use { reader -> reader.readLines().filter(String::isNotBlank) }
+    if (lines.isEmpty()) {
+        return 0.0
+    }
+    return lines.count { detector.detectLanguageOf(it) == language }.toDouble() / lines.size
+}
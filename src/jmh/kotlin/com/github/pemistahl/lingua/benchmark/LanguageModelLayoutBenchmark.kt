@@ -0,0 +1,94 @@
+/*
+ * Copyright © 2018-today Peter M. Stahl pemistahl@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either expressed or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pemistahl.lingua.benchmark
+
+import com.github.pemistahl.lingua.api.Language
+import com.github.pemistahl.lingua.api.LanguageDetector
+import com.github.pemistahl.lingua.api.LanguageDetectorBuilder
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Fork
+import org.openjdk.jmh.annotations.Measurement
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.TearDown
+import org.openjdk.jmh.annotations.Warmup
+import java.util.concurrent.TimeUnit
+
+/**
+ * Compares the detection latency of the language model layouts. The heap used by
+ * each layout is reported by the `languageModelMemoryBenchmark` task.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+open class LanguageModelLayoutBenchmark {
+
+    @Param("hash map", "sorted array")
+    lateinit var languageModelLayout: String
+
+    @Param("high", "low")
+    lateinit var accuracyMode: String
+
+    private lateinit var detector: LanguageDetector
+    private var textIndex = 0
+
+    @Setup
+    fun setUp() {
+        var builder = LanguageDetectorBuilder.fromAllLanguagesWithLatinScript().withPreloadedLanguageModels()
+        if (languageModelLayout == "sorted array") {
+            builder = builder.withSortedArrayLanguageModels()
+        }
+        if (accuracyMode == "low") {
+            builder = builder.withLowAccuracyMode()
+        }
+        detector = builder.build()
+    }
+
+    @TearDown
+    fun tearDown() {
+        detector.unloadLanguageModels()
+    }
+
+    @Benchmark
+    fun detectLanguageOf(): Language {
+        textIndex = (textIndex + 1) % TEXTS.size
+        return detector.detectLanguageOf(TEXTS[textIndex])
+    }
+
+    private companion object {
+        val TEXTS = listOf(
+            "languages are awesome",
+            "Sprachen sind großartig",
+            "les langues sont géniales",
+            "las lenguas son increíbles",
+            "le lingue sono fantastiche",
+            "talen zijn geweldig",
+            "språk är fantastiska",
+            "języki są niesamowite",
+            "a nyelvek csodálatosak",
+            "kielet ovat mahtavia"
+        )
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright © 2018-today Peter M. Stahl pemistahl@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either expressed or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pemistahl.lingua.benchmark
+
+import com.github.pemistahl.lingua.api.Language
+import com.github.pemistahl.lingua.api.LanguageDetector
+import com.github.pemistahl.lingua.api.LanguageDetectorBuilder
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Fork
+import org.openjdk.jmh.annotations.Measurement
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.TearDown
+import org.openjdk.jmh.annotations.Warmup
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.Paths
+import java.nio.file.StandardCopyOption
+import java.util.concurrent.TimeUnit
+
+/**
+ * Measures the time needed to parse the JSON language model file of a single ngram length.
+ * A cold load is measured in a fresh JVM, a warm load after the parser has been compiled.
+ *
+ * The JSON files are read from `src/main/resources/language-models` unless the system property
+ * `lingua.languageModelsDirectory` points to another directory. They are copied into a temporary
+ * directory for every trial, which is deleted again after the trial.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+open class LanguageModelLoadingBenchmark {
+
+    @Param("1", "2", "3", "4", "5")
+    var ngramLength = 0
+
+    @Param("GERMAN")
+    lateinit var language: Language
+
+    @Setup
+    fun setUp() {
+        val isoCode = language.isoCode639_1.toString()
+        val fileName = "${NGRAM_NAMES[ngramLength - 1]}s.json"
+        val sourceDirectory = Paths.get(
+            System.getProperty("lingua.languageModelsDirectory", "src/main/resources/language-models")
+        )
+        val targetDirectory = Files.createDirectories(LANGUAGE_MODELS_DIRECTORY.resolve(isoCode))
+        Files.copy(
+            sourceDirectory.resolve(isoCode).resolve(fileName),
+            targetDirectory.resolve(fileName),
+            StandardCopyOption.REPLACE_EXISTING
+        )
+    }
+
+    @TearDown
+    fun tearDown() {
+        Files.walk(LANGUAGE_MODELS_DIRECTORY).use { paths ->
+            paths.sorted(Comparator.reverseOrder()).forEach(Files::delete)
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 1)
+    @Fork(10)
+    fun coldLoad(): LanguageDetector = load()
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @Warmup(iterations = 3, time = 5)
+    @Measurement(iterations = 5, time = 5)
+    fun warmLoad(): LanguageDetector = load()
+
+    private fun load(): LanguageDetector {
+        val detector = LanguageDetectorBuilder
+            .fromLanguages(language, Language.ENGLISH)
+            .withLanguageModelsFromDirectory(LANGUAGE_MODELS_DIRECTORY)
+            .withPreloadedLanguageModels()
+            .build()
+        detector.unloadLanguageModels()
+        return detector
+    }
+
+    private companion object {
+        val NGRAM_NAMES = listOf("unigram", "bigram", "trigram", "quadrigram", "fivegram")
+        val LANGUAGE_MODELS_DIRECTORY: Path =
+            Paths.get(System.getProperty("java.io.tmpdir"), "lingua-benchmark-language-models")
+    }
+}
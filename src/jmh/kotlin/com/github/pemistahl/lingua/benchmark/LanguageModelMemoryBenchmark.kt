@@ -0,0 +1,63 @@
+/*
+ * Copyright © 2018-today Peter M. Stahl pemistahl@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either expressed or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pemistahl.lingua.benchmark
+
+import com.github.pemistahl.lingua.api.LanguageDetector
+import com.github.pemistahl.lingua.api.LanguageDetectorBuilder
+
+/**
+ * Measures the heap used by the language models of all supported languages
+ * for each way of storing them which *Lingua* offers.
+ */
+fun main() {
+    val languageModelModes = linkedMapOf<String, (LanguageDetectorBuilder) -> LanguageDetectorBuilder>(
+        "default" to { it },
+        "bloom filters" to { it.withBloomFilters() },
+        "sorted array" to { it.withSortedArrayLanguageModels() },
+        "quantized" to { it.withQuantizedLanguageModels() },
+        "perfect hash" to { it.withPerfectHashLanguageModels() },
+        "clustered" to { it.withClusteredLanguageModels() },
+        "fused" to { it.withFusedLanguageModels() },
+        "trie" to { it.withPrefixTrieLanguageModels() },
+    )
+
+    println("Heap used by the language models of all languages:\n")
+
+    for ((languageModelMode, configure) in languageModelModes) {
+        val heapBefore = usedHeap()
+        var detector: LanguageDetector? = configure(LanguageDetectorBuilder.fromAllLanguages())
+            .withPreloadedLanguageModels()
+            .build()
+        val heapAfter = usedHeap()
+
+        println("%-14s %,10.1f MB".format(languageModelMode, (heapAfter - heapBefore) / (1024.0 * 1024.0)))
+
+        detector?.unloadLanguageModels()
+        detector = null
+    }
+}
+
+private fun usedHeap(): Long {
+    val runtime = Runtime.getRuntime()
+    var usedHeap = Long.MAX_VALUE
+    repeat(5) {
+        System.gc()
+        Thread.sleep(100)
+        usedHeap = minOf(usedHeap, runtime.totalMemory() - runtime.freeMemory())
+    }
+    return usedHeap
+}
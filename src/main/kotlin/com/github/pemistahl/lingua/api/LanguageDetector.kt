@@ -20,28 +20,55 @@ import com.github.pemistahl.lingua.api.Language.CHINESE
 import com.github.pemistahl.lingua.api.Language.JAPANESE
 import com.github.pemistahl.lingua.api.Language.UNKNOWN
 import com.github.pemistahl.lingua.internal.Alphabet
+import com.github.pemistahl.lingua.internal.BinaryLanguageModel
+import com.github.pemistahl.lingua.internal.BloomFilter
+import com.github.pemistahl.lingua.internal.ClusteredLanguageModel
 import com.github.pemistahl.lingua.internal.Constant.CHARS_TO_LANGUAGES_MAPPING
 import com.github.pemistahl.lingua.internal.Constant.MULTIPLE_WHITESPACE
 import com.github.pemistahl.lingua.internal.Constant.NO_LETTER
 import com.github.pemistahl.lingua.internal.Constant.NUMBERS
 import com.github.pemistahl.lingua.internal.Constant.PUNCTUATION
 import com.github.pemistahl.lingua.internal.Constant.isJapaneseAlphabet
+import com.github.pemistahl.lingua.internal.FeatureHashedLanguageModel
+import com.github.pemistahl.lingua.internal.FusedLanguageModel
+import com.github.pemistahl.lingua.internal.HashLanguageModel
+import com.github.pemistahl.lingua.internal.JsonLanguageModelReader
+import com.github.pemistahl.lingua.internal.LanguageModel
+import com.github.pemistahl.lingua.internal.LanguageModelCache
+import com.github.pemistahl.lingua.internal.LanguageModelRegistry
+import com.github.pemistahl.lingua.internal.MappedLanguageModel
+import com.github.pemistahl.lingua.internal.MemoryFootprint
 import com.github.pemistahl.lingua.internal.Ngram
+import com.github.pemistahl.lingua.internal.NgramUsageCounter
+import com.github.pemistahl.lingua.internal.PackedNgram
+import com.github.pemistahl.lingua.internal.PerfectHashLanguageModel
+import com.github.pemistahl.lingua.internal.QuantizedLanguageModel
+import com.github.pemistahl.lingua.internal.SortedArrayLanguageModel
 import com.github.pemistahl.lingua.internal.TestDataLanguageModel
-import com.github.pemistahl.lingua.internal.TrainingDataLanguageModel
-import com.github.pemistahl.lingua.internal.util.extension.enumMapOf
+import com.github.pemistahl.lingua.internal.TieredLanguageModel
+import com.github.pemistahl.lingua.internal.TrieLanguageModel
+import com.github.pemistahl.lingua.internal.WeakValueMap
 import com.github.pemistahl.lingua.internal.util.extension.incrementCounter
 import com.github.pemistahl.lingua.internal.util.extension.isLogogram
-import it.unimi.dsi.fastutil.objects.Object2FloatMap
-import it.unimi.dsi.fastutil.objects.Object2FloatOpenHashMap
+import it.unimi.dsi.fastutil.longs.Long2FloatMap
+import it.unimi.dsi.fastutil.longs.Long2FloatOpenHashMap
+import java.io.InputStream
+import java.lang.ref.Cleaner
+import java.nio.file.Files
+import java.nio.file.Path
 import java.security.AccessController
 import java.security.PrivilegedAction
-import java.util.EnumMap
+import java.util.Collections
+import java.util.EnumSet
+import java.util.IdentityHashMap
 import java.util.SortedMap
 import java.util.TreeMap
 import java.util.concurrent.Callable
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CompletionException
+import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.ForkJoinPool
-import kotlin.math.ln
+import java.util.function.Consumer
 
 /**
  * Detects the language of given input text.
@@ -52,11 +79,127 @@ class LanguageDetector internal constructor(
     isEveryLanguageModelPreloaded: Boolean,
     internal val isLowAccuracyModeEnabled: Boolean,
     internal val numberOfLoadedLanguages: Int = languages.size,
+    internal val memoryMappedLanguageModelsDirectory: Path? = null,
+    internal val isLanguageModelQuantizationEnabled: Boolean = false,
+    internal val isLanguageModelFusionEnabled: Boolean = false,
+    internal val isPrefixTrieEnabled: Boolean = false,
+    internal val isPerfectHashingEnabled: Boolean = false,
+    internal val bloomFilterFalsePositiveRate: Double? = null,
+    internal val isSortedArrayLayoutEnabled: Boolean = false,
+    internal val languageModelsDirectory: Path? = null,
+    internal val tieredLanguageModelsDirectory: Path? = null,
+    internal val hotNgramCount: Int = 0,
+    internal val featureHashingBucketCount: Int? = null,
+    internal val isScriptPartitioningEnabled: Boolean = false,
+    internal val isLanguageModelClusteringEnabled: Boolean = false,
+    internal val languageModelMemoryBudget: Long? = null,
+    internal val cascadeConfidenceMargin: Double? = null,
 ) {
     private val languagesWithUniqueCharacters = languages.filterNot { it.uniqueCharacters.isNullOrBlank() }.asSequence()
     private val oneLanguageAlphabets = Alphabet.allSupportingExactlyOneLanguage().filterValues {
         it in languages
     }
+    private val ngramUsageCounter = tieredLanguageModelsDirectory?.let {
+        NgramUsageCounter(maximumNgramCount = hotNgramCount * languages.size * 2)
+    }
+    // the memory-mapped models which the tiered models of this detector wrap, shared by all detectors
+    private val coldLanguageModels = tieredLanguageModelsDirectory?.let { mappedLanguageModelsOf(it) }
+    private val tieredLanguageModels = coldLanguageModels?.let { coldRegistries ->
+        (1..5).map { ngramLength ->
+            LanguageModelRegistry { language ->
+                TieredLanguageModel(coldRegistries[ngramLength - 1].getOrLoad(language))
+            }
+        }
+    }
+    private val languageClusters = ClusteredLanguageModel.CLUSTERS
+        .map { it intersect languages }
+        .filter { it.size >= 2 }
+        .toSet()
+    private val languageModelCache = languageModelMemoryBudget?.let { budget ->
+        languageModelCaches.computeIfAbsent(budget) { maximumSizeInBytes ->
+            LanguageModelCache(maximumSizeInBytes) { language, ngramLength ->
+                HashLanguageModel(loadLogProbabilities(language, ngramLength))
+            }
+        }
+    }
+    private val languageModels: List<LanguageModelRegistry<out LanguageModel>> = when {
+        languageModelsDirectory != null -> directoryLanguageModels.computeIfAbsent(
+            languageModelsDirectory
+        ) { directoryPath ->
+            (1..5).map { ngramLength ->
+                LanguageModelRegistry { language ->
+                    HashLanguageModel(
+                        LanguageModel.toLogProbabilities(loadFrequencies(directoryPath, language, ngramLength))
+                    )
+                }
+            }
+        }
+        tieredLanguageModels != null -> tieredLanguageModels
+        memoryMappedLanguageModelsDirectory != null -> mappedLanguageModelsOf(memoryMappedLanguageModelsDirectory)
+        isScriptPartitioningEnabled -> scriptPartitionedLanguageModels.computeIfAbsent(
+            languages.flatMapTo(EnumSet.of(Alphabet.NONE)) { it.alphabets }
+        ) { alphabets ->
+            (1..5).map { ngramLength ->
+                LanguageModelRegistry { language ->
+                    HashLanguageModel(loadLogProbabilities(language, ngramLength, alphabets))
+                }
+            }
+        }
+        isLanguageModelClusteringEnabled -> clusteredLanguageModelsOf(languageClusters)
+        languageModelCache != null -> languageModelCache.languageModels
+        isPerfectHashingEnabled -> perfectHashLanguageModels
+        isSortedArrayLayoutEnabled -> sortedArrayLanguageModels
+        isLanguageModelQuantizationEnabled -> quantizedLanguageModels
+        else -> defaultLanguageModels
+    }
+
+    // clustered registries hand out the models of the default registries for all languages outside of any cluster
+    private val delegateLanguageModels: List<LanguageModelRegistry<*>> =
+        if (languageModels === clusteredLanguageModels[languageClusters]) defaultLanguageModels else emptyList()
+
+    private val bloomFilters = bloomFilterFalsePositiveRate?.let { falsePositiveRate ->
+        // The filters are built from the keys of the models they are paired with, so that no model file
+        // is decoded twice. Tiered models are paired with their cold models, which all detectors share.
+        val languageModelsWithKeys = coldLanguageModels ?: languageModels
+        val pairedLanguageModels = BLOOM_FILTERED_NGRAM_LENGTHS.map { languageModelsWithKeys[it - 1] }
+        bloomFilterRegistries.computeIfAbsent(falsePositiveRate to pairedLanguageModels) {
+            pairedLanguageModels.map { registry ->
+                LanguageModelRegistry { language ->
+                    BloomFilter.fromLanguageModel(registry.getOrLoad(language), falsePositiveRate)
+                }
+            }
+        }
+    }
+
+    @Volatile
+    private var fusedLanguageModels = createFusedLanguageModels()
+
+    @Volatile
+    private var featureHashedLanguageModel = createFeatureHashedLanguageModel()
+
+    private val leasedLanguageModels: List<LanguageModelRegistry<*>> = when {
+        featureHashingBucketCount != null || isLanguageModelFusionEnabled -> emptyList()
+        isPrefixTrieEnabled -> listOf(trieLanguageModels)
+        else -> languageModelsToLoad() + bloomFilters.orEmpty().filterIndexed { i, _ ->
+            BLOOM_FILTERED_NGRAM_LENGTHS.first + i in ngramLengthsToLoad()
+        }
+    }
+    private val leasedLanguages = languages.toList()
+
+    // the generations of the leases of this detector, per leased registry and language
+    private val leaseGenerations = leasedLanguageModels.map { registry ->
+        IntArray(leasedLanguages.size) { i -> registry.acquire(leasedLanguages[i]) }
+    }
+
+    /**
+     * Returns the leases of this detector, either when it is unloaded or once it has been garbage
+     * collected without being unloaded. The leases are returned only once, whichever comes first.
+     */
+    internal val leaseRelease: Cleaner.Cleanable? = if (leasedLanguageModels.isNotEmpty()) {
+        leaseCleaner.register(this, LeaseRelease(leasedLanguageModels, leaseGenerations, leasedLanguages))
+    } else {
+        null
+    }
 
     init {
         if (isEveryLanguageModelPreloaded) {
@@ -138,32 +281,16 @@ class LanguageDetector internal constructor(
         } else {
             (1..5)
         }
-        val tasks = ngramSizeRange.filter { i -> cleanedUpText.length >= i }.map { i ->
-            Callable {
-                AccessController.doPrivileged(
-                    PrivilegedAction {
-                        val testDataModel = TestDataLanguageModel.fromText(cleanedUpText, ngramLength = i)
-                        val probabilities = computeLanguageProbabilities(testDataModel, filteredLanguages)
-
-                        val unigramCounts = if (i == 1) {
-                            val languages = probabilities.keys
-                            val unigramFilteredLanguages =
-                                if (languages.isNotEmpty()) filteredLanguages.asSequence()
-                                    .filter { languages.contains(it) }
-                                    .toSet()
-                                else filteredLanguages
-                            countUnigramsOfInputText(testDataModel, unigramFilteredLanguages)
-                        } else {
-                            null
-                        }
-
-                        Pair(probabilities, unigramCounts)
-                    }
-                )
+        val allProbabilitiesAndUnigramCounts = if (cascadeConfidenceMargin != null && ngramSizeRange.last > 3) {
+            val lowerOrderResults = computeProbabilitiesAndUnigramCounts(cleanedUpText, (1..3), filteredLanguages)
+            if (isDecidedClearly(lowerOrderResults, filteredLanguages, cascadeConfidenceMargin)) {
+                lowerOrderResults
+            } else {
+                lowerOrderResults + computeProbabilitiesAndUnigramCounts(cleanedUpText, (4..5), filteredLanguages)
             }
+        } else {
+            computeProbabilitiesAndUnigramCounts(cleanedUpText, ngramSizeRange, filteredLanguages)
         }
-
-        val allProbabilitiesAndUnigramCounts = ForkJoinPool.commonPool().invokeAll(tasks).map { it.get() }
         val allProbabilities = allProbabilitiesAndUnigramCounts.map { (probabilities, _) -> probabilities }
         val unigramCounts = allProbabilitiesAndUnigramCounts[0].second ?: emptyMap()
         val summedUpProbabilities = sumUpProbabilities(allProbabilities, unigramCounts, filteredLanguages)
@@ -175,6 +302,79 @@ class LanguageDetector internal constructor(
         return confidenceValues.toSortedMap(sortedByConfidenceValueThenByLanguage)
     }
 
+    /**
+     * Records the ngrams of the given sample text as used, without detecting its language.
+     *
+     * If this detector was built with tiered language models, the ngrams of every text
+     * whose language is detected are recorded automatically. This method additionally
+     * allows to record the ngrams of a sample corpus, for instance before the first call
+     * of [updateHotNgrams]. For all other language models, this method has no effect.
+     *
+     * @param text The sample text whose ngrams to record.
+     */
+    fun recordNgramUsage(text: String) {
+        if (ngramUsageCounter == null) return
+        val cleanedUpText = cleanUpInputText(text)
+        for (ngramLength in ngramLengthsToLoad()) {
+            if (cleanedUpText.length >= ngramLength) {
+                ngramUsageCounter.record(TestDataLanguageModel.fromText(cleanedUpText, ngramLength).packedNgrams)
+            }
+        }
+    }
+
+    /**
+     * Moves the most used ngrams recorded so far into the hot tier of the tiered language models
+     * which are currently loaded, replacing the previous hot ngrams.
+     *
+     * The results of language detection do not change, only the time needed to look up the ngrams.
+     * For all other language models, this method has no effect.
+     */
+    fun updateHotNgrams() {
+        if (ngramUsageCounter == null || tieredLanguageModels == null) return
+        for (ngramLength in ngramLengthsToLoad()) {
+            val rankedNgrams = ngramUsageCounter.rankedNgrams(ngramLength)
+            for (language in languages) {
+                tieredLanguageModels[ngramLength - 1][language]?.promote(rankedNgrams, hotNgramCount)
+            }
+        }
+    }
+
+    /**
+     * Loads all language models of this [LanguageDetector] instance in the background
+     * and returns immediately.
+     *
+     * The detector can be used while the language models are being loaded.
+     * Language models that are not loaded yet when they are needed are loaded
+     * lazily on the calling thread, just as without preloading.
+     *
+     * @return A future which is completed as soon as all language models are loaded.
+     */
+    fun preloadLanguageModelsAsync(): CompletableFuture<Void> = preloadLanguageModelsAsync {}
+
+    /**
+     * Loads all language models of this [LanguageDetector] instance in the background
+     * and returns immediately.
+     *
+     * The detector can be used while the language models are being loaded.
+     * Language models that are not loaded yet when they are needed are loaded
+     * lazily on the calling thread, just as without preloading.
+     *
+     * @param onLanguageLoaded Called once for each language as soon as all of its
+     * language models are loaded. It is called on a thread of [ForkJoinPool.commonPool].
+     * @return A future which is completed as soon as all language models are loaded
+     * and [onLanguageLoaded] has been called for every language.
+     */
+    fun preloadLanguageModelsAsync(onLanguageLoaded: Consumer<Language>): CompletableFuture<Void> {
+        val runningTasks = createPreloadTasks().map { task ->
+            task to CompletableFuture.runAsync({ task.load() }, ForkJoinPool.commonPool())
+        }
+        val loadedLanguages = languages.map { language ->
+            val futures = runningTasks.filter { (task, _) -> language in task.languages }.map { it.second }
+            CompletableFuture.allOf(*futures.toTypedArray()).thenRun { onLanguageLoaded.accept(language) }
+        }
+        return CompletableFuture.allOf(*loadedLanguages.toTypedArray())
+    }
+
     /**
      * Unloads all language models loaded by this [LanguageDetector] instance
      * and frees associated resources.
@@ -203,27 +403,51 @@ class LanguageDetector internal constructor(
      * is redeployed multiple times, even though they should not be thrown due to
      * the internal use of [ForkJoinPool.commonPool] for loading language models
      * in parallel.
+     *
+     * Language models are shared by all detectors using the same kind of language models.
+     * Models which are still used by other detectors that have not been unloaded yet
+     * are kept in memory until the last of these detectors is unloaded as well.
+     * Detectors which become unreachable without being unloaded return their leases
+     * on the shared models once they have been garbage collected.
      */
     fun unloadLanguageModels() {
-        synchronized(trigramLanguageModels) {
-            languages.forEach(trigramLanguageModels::remove)
-        }
-        if (!isLowAccuracyModeEnabled) {
-            synchronized(unigramLanguageModels) {
-                languages.forEach(unigramLanguageModels::remove)
-            }
-            synchronized(bigramLanguageModels) {
-                languages.forEach(bigramLanguageModels::remove)
-            }
-            synchronized(quadrigramLanguageModels) {
-                languages.forEach(quadrigramLanguageModels::remove)
-            }
-            synchronized(fivegramLanguageModels) {
-                languages.forEach(fivegramLanguageModels::remove)
-            }
+        fusedLanguageModels = createFusedLanguageModels()
+        featureHashedLanguageModel = createFeatureHashedLanguageModel()
+
+        leaseRelease?.clean()
+        val usedLanguageModels = listOf(trieLanguageModels) + bloomFilters.orEmpty() + languageModelsToLoad()
+
+        for (registry in usedLanguageModels) {
+            languages.forEach(registry::removeIfUnleased)
         }
     }
 
+    /**
+     * Returns the number of language models of this [LanguageDetector] instance
+     * which are currently loaded.
+     *
+     * As language models are shared, models loaded by other detectors for the same
+     * languages are counted as well, each of them only once. Fused and feature-hashed
+     * language models belong to a single detector and are not counted.
+     */
+    fun countLoadedLanguageModels(): Int = loadedLanguageModels().size
+
+    /**
+     * Returns the approximate number of bytes occupied by the language models
+     * counted by [countLoadedLanguageModels].
+     */
+    fun computeLoadedLanguageModelsSizeInBytes(): Long = loadedLanguageModels().sumOf { it.sizeInBytes }
+
+    /**
+     * Returns the current counters of the language model cache if this [LanguageDetector]
+     * has been built with a memory budget for its language models, otherwise `null`.
+     *
+     * All detectors built with the same memory budget share the same cache.
+     *
+     * @see LanguageDetectorBuilder.withLanguageModelMemoryBudget
+     */
+    fun getLanguageModelCacheStatistics(): LanguageModelCacheStatistics? = languageModelCache?.statistics
+
     internal fun cleanUpInputText(text: String): String {
         return text.trim().lowercase()
             .replace(PUNCTUATION, "")
@@ -264,9 +488,9 @@ class LanguageDetector internal constructor(
     ): Map<Language, Int> {
         val unigramCounts = mutableMapOf<Language, Int>()
         for (language in filteredLanguages) {
-            for (unigram in unigramLanguageModel.ngrams) {
-                val probability = lookUpNgramProbability(language, unigram)
-                if (probability > 0) {
+            for (unigram in unigramLanguageModel.packedNgrams) {
+                val logProbability = lookUpNgramLogProbability(language, unigram[0], 1)
+                if (logProbability != Float.NEGATIVE_INFINITY) {
                     unigramCounts.incrementCounter(language)
                 }
             }
@@ -274,6 +498,61 @@ class LanguageDetector internal constructor(
         return unigramCounts
     }
 
+    private fun computeProbabilitiesAndUnigramCounts(
+        cleanedUpText: String,
+        ngramSizeRange: IntRange,
+        filteredLanguages: Set<Language>
+    ): List<Pair<Map<Language, Float>, Map<Language, Int>?>> {
+        val tasks = ngramSizeRange.filter { i -> cleanedUpText.length >= i }.map { i ->
+            Callable {
+                AccessController.doPrivileged(
+                    PrivilegedAction {
+                        val testDataModel = TestDataLanguageModel.fromText(cleanedUpText, ngramLength = i)
+                        ngramUsageCounter?.record(testDataModel.packedNgrams)
+                        val probabilities = computeLanguageProbabilities(testDataModel, filteredLanguages)
+
+                        val unigramCounts = if (i == 1) {
+                            val languages = probabilities.keys
+                            val unigramFilteredLanguages =
+                                if (languages.isNotEmpty()) filteredLanguages.asSequence()
+                                    .filter { languages.contains(it) }
+                                    .toSet()
+                                else filteredLanguages
+                            countUnigramsOfInputText(testDataModel, unigramFilteredLanguages)
+                        } else {
+                            null
+                        }
+
+                        Pair(probabilities, unigramCounts)
+                    }
+                )
+            }
+        }
+
+        return ForkJoinPool.commonPool().invokeAll(tasks).map { it.get() }
+    }
+
+    /**
+     * Returns `true` if the confidence value of the second most likely language is lower
+     * than that of the most likely language by at least [margin], based on the given
+     * probabilities of the lower ngram orders only.
+     */
+    private fun isDecidedClearly(
+        probabilitiesAndUnigramCounts: List<Pair<Map<Language, Float>, Map<Language, Int>?>>,
+        filteredLanguages: Set<Language>,
+        margin: Double
+    ): Boolean {
+        val summedUpProbabilities = sumUpProbabilities(
+            probabilitiesAndUnigramCounts.map { (probabilities, _) -> probabilities },
+            probabilitiesAndUnigramCounts[0].second ?: emptyMap(),
+            filteredLanguages
+        )
+        val highestProbabilities = summedUpProbabilities.values.sortedDescending()
+        if (highestProbabilities.size < 2) return highestProbabilities.isNotEmpty()
+        val secondConfidenceValue = (highestProbabilities[0] / highestProbabilities[1]).toDouble()
+        return 1.0 - secondConfidenceValue >= margin
+    }
+
     internal fun sumUpProbabilities(
         probabilities: List<Map<Language, Float>>,
         unigramCountsOfInputText: Map<Language, Int>,
@@ -430,24 +709,107 @@ class LanguageDetector internal constructor(
         testDataModel: TestDataLanguageModel,
         filteredLanguages: Set<Language>
     ): Map<Language, Float> {
+        val featureHashedModel = featureHashedLanguageModel
+        if (featureHashedModel != null) {
+            return computeFeatureHashedLanguageProbabilities(featureHashedModel.value, testDataModel, filteredLanguages)
+        }
+        if (isLanguageModelFusionEnabled) {
+            return computeFusedLanguageProbabilities(testDataModel, filteredLanguages)
+        }
         val probabilities = mutableMapOf<Language, Float>()
         for (language in filteredLanguages) {
-            probabilities[language] = computeSumOfNgramProbabilities(language, testDataModel.ngrams)
+            probabilities[language] = if (isPrefixTrieEnabled) {
+                computeSumOfNgramProbabilities(language, testDataModel)
+            } else {
+                computeSumOfNgramProbabilities(language, testDataModel.packedNgrams)
+            }
         }
         return probabilities.filter { it.value < 0.0 }
     }
 
+    private fun computeFusedLanguageProbabilities(
+        testDataModel: TestDataLanguageModel,
+        filteredLanguages: Set<Language>
+    ): Map<Language, Float> {
+        val isFilteredLanguage = BooleanArray(Language.values().size)
+        val probabilitiesSums = FloatArray(Language.values().size)
+        val lastMatchingNgrams = IntArray(Language.values().size) { -1 }
+        for (language in filteredLanguages) {
+            isFilteredLanguage[language.ordinal] = true
+        }
+
+        for ((ngramIndex, packedNgram) in testDataModel.packedNgrams.withIndex()) {
+            var unmatchedLanguageCount = filteredLanguages.size
+            for (i in packedNgram.indices) {
+                val fusedModel = fusedLanguageModels[packedNgram.size - i - 1].value
+                val position = fusedModel.positionOf(packedNgram[i])
+                if (position < 0) continue
+
+                for (entry in fusedModel.firstEntryAt(position) until fusedModel.endOfEntriesAt(position)) {
+                    val ordinal = fusedModel.languageOrdinalOf(entry)
+                    if (isFilteredLanguage[ordinal] && lastMatchingNgrams[ordinal] != ngramIndex) {
+                        lastMatchingNgrams[ordinal] = ngramIndex
+                        probabilitiesSums[ordinal] += fusedModel.logProbabilityOf(entry)
+                        unmatchedLanguageCount--
+                    }
+                }
+                if (unmatchedLanguageCount == 0) break
+            }
+        }
+
+        return filteredLanguages.associateWith { probabilitiesSums[it.ordinal] }.filter { it.value < 0.0 }
+    }
+
+    private fun computeFeatureHashedLanguageProbabilities(
+        featureHashedModel: FeatureHashedLanguageModel,
+        testDataModel: TestDataLanguageModel,
+        filteredLanguages: Set<Language>
+    ): Map<Language, Float> {
+        val columns = filteredLanguages.map(featureHashedModel::columnOf).toIntArray()
+        val probabilitiesSums = FloatArray(columns.size)
+        val isMatched = BooleanArray(columns.size)
+
+        for (packedNgram in testDataModel.packedNgrams) {
+            isMatched.fill(false)
+            var unmatchedLanguageCount = columns.size
+            for (i in packedNgram.indices) {
+                val row = featureHashedModel.rowOf(packedNgram[i], packedNgram.size - i)
+                val fingerprint = featureHashedModel.fingerprintOf(packedNgram[i], packedNgram.size - i)
+                for (j in columns.indices) {
+                    if (isMatched[j]) continue
+                    val logProbability = featureHashedModel.logProbabilityAt(row, columns[j], fingerprint)
+                    if (logProbability != Float.NEGATIVE_INFINITY) {
+                        isMatched[j] = true
+                        probabilitiesSums[j] += logProbability
+                        unmatchedLanguageCount--
+                    }
+                }
+                if (unmatchedLanguageCount == 0) break
+            }
+        }
+
+        return filteredLanguages.withIndex()
+            .associate { (j, language) -> language to probabilitiesSums[j] }
+            .filter { it.value < 0.0 }
+    }
+
     internal fun computeSumOfNgramProbabilities(
         language: Language,
-        ngrams: Set<Ngram>
+        packedNgrams: Array<LongArray>
     ): Float {
+        // each language model is fetched only once per text instead of once per ngram
+        val models = arrayOfNulls<LanguageModel>(5)
         var probabilitiesSum = 0F
 
-        for (ngram in ngrams) {
-            for (elem in ngram.rangeOfLowerOrderNgrams()) {
-                val probability = lookUpNgramProbability(language, elem)
-                if (probability > 0) {
-                    probabilitiesSum += ln(probability)
+        for (packedNgram in packedNgrams) {
+            for (i in packedNgram.indices) {
+                val ngramLength = packedNgram.size - i
+                if (isRejectedByBloomFilter(language, packedNgram[i], ngramLength)) continue
+                val model = models[ngramLength - 1]
+                    ?: languageModels[ngramLength - 1].getOrLoad(language).also { models[ngramLength - 1] = it }
+                val logProbability = model.getLogProbability(packedNgram[i])
+                if (logProbability != Float.NEGATIVE_INFINITY) {
+                    probabilitiesSum += logProbability
                     break
                 }
             }
@@ -455,86 +817,369 @@ class LanguageDetector internal constructor(
         return probabilitiesSum
     }
 
-    internal fun lookUpNgramProbability(
+    private fun computeSumOfNgramProbabilities(
+        language: Language,
+        testDataModel: TestDataLanguageModel
+    ): Float {
+        val trieModel = trieLanguageModels.getOrLoad(language)
+        var probabilitiesSum = 0F
+
+        for ((i, ngram) in testDataModel.ngrams.withIndex()) {
+            val logProbability = trieModel.getLongestPrefixLogProbability(ngram.value, testDataModel.packedNgrams[i][0])
+            if (logProbability != Float.NEGATIVE_INFINITY) {
+                probabilitiesSum += logProbability
+            }
+        }
+        return probabilitiesSum
+    }
+
+    internal fun lookUpNgramLogProbability(
         language: Language,
         ngram: Ngram
     ): Float {
         val ngramLength = ngram.value.length
-        val languageModels = when (ngramLength) {
-            5 -> fivegramLanguageModels
-            4 -> quadrigramLanguageModels
-            3 -> trigramLanguageModels
-            2 -> bigramLanguageModels
-            1 -> unigramLanguageModels
-            0 -> throw IllegalArgumentException("Zerogram detected")
-            else -> throw IllegalArgumentException("unsupported ngram length detected: ${ngram.value.length}")
+        when {
+            ngramLength == 0 -> throw IllegalArgumentException("Zerogram detected")
+            ngramLength > 5 -> throw IllegalArgumentException("unsupported ngram length detected: $ngramLength")
+        }
+        return lookUpNgramLogProbability(language, PackedNgram.pack(ngram.value), ngramLength)
+    }
+
+    private fun lookUpNgramLogProbability(
+        language: Language,
+        packedNgram: Long,
+        ngramLength: Int
+    ): Float {
+        val featureHashedModel = featureHashedLanguageModel
+        if (featureHashedModel != null) {
+            return featureHashedModel.value.getLogProbability(language, packedNgram, ngramLength)
+        }
+        return when {
+            isLanguageModelFusionEnabled ->
+                fusedLanguageModels[ngramLength - 1].value.getLogProbability(language, packedNgram)
+            isPrefixTrieEnabled -> trieLanguageModels.getOrLoad(language).getLogProbability(packedNgram, ngramLength)
+            isRejectedByBloomFilter(language, packedNgram, ngramLength) -> Float.NEGATIVE_INFINITY
+            else -> languageModels[ngramLength - 1].getOrLoad(language).getLogProbability(packedNgram)
         }
+    }
 
-        val model = loadLanguageModels(languageModels, language, ngramLength)
+    private fun isRejectedByBloomFilter(language: Language, packedNgram: Long, ngramLength: Int): Boolean {
+        if (bloomFilters == null || ngramLength !in BLOOM_FILTERED_NGRAM_LENGTHS) return false
+        val bloomFilter = bloomFilters[ngramLength - BLOOM_FILTERED_NGRAM_LENGTHS.first].getOrLoad(language)
+        return !bloomFilter.mightContain(packedNgram)
+    }
 
-        return model.getFloat(ngram.value)
+    private fun createFusedLanguageModels() = (1..5).map { ngramLength ->
+        lazy {
+            FusedLanguageModel.fromLogProbabilities(
+                languages.associateWith { loadLogProbabilities(it, ngramLength) }
+            )
+        }
     }
 
-    private fun preloadLanguageModels() {
-        val tasks = mutableListOf<Callable<Object2FloatMap<String>>>()
+    private fun languageModelsToLoad(): List<LanguageModelRegistry<*>> = ngramLengthsToLoad().flatMap { ngramLength ->
+        listOfNotNull(
+            languageModels[ngramLength - 1],
+            delegateLanguageModels.getOrNull(ngramLength - 1),
+            coldLanguageModels?.get(ngramLength - 1)
+        )
+    }
 
-        for (language in languages) {
-            tasks.add(Callable { loadLanguageModels(trigramLanguageModels, language, 3) })
+    /** Returns the distinct models loaded into the registries leased by this detector, compared by identity. */
+    private fun loadedLanguageModels(): Set<MemoryFootprint> {
+        val loadedLanguageModels = Collections.newSetFromMap(IdentityHashMap<MemoryFootprint, Boolean>())
+        for (registry in leasedLanguageModels) {
+            // the size of a tiered model already includes its cold model
+            if (coldLanguageModels?.contains(registry) == true) continue
+            languages.mapNotNullTo(loadedLanguageModels) { registry[it] }
+        }
+        return loadedLanguageModels
+    }
 
-            if (!isLowAccuracyModeEnabled) {
-                tasks.add(Callable { loadLanguageModels(unigramLanguageModels, language, 1) })
-                tasks.add(Callable { loadLanguageModels(bigramLanguageModels, language, 2) })
-                tasks.add(Callable { loadLanguageModels(quadrigramLanguageModels, language, 4) })
-                tasks.add(Callable { loadLanguageModels(fivegramLanguageModels, language, 5) })
+    private fun createFeatureHashedLanguageModel() = featureHashingBucketCount?.let { bucketCount ->
+        lazy {
+            FeatureHashedLanguageModel.fromLanguageModels(languages, bucketCount) { language, ngramLength ->
+                if (ngramLength in ngramLengthsToLoad()) {
+                    loadLogProbabilities(language, ngramLength)
+                } else {
+                    Long2FloatOpenHashMap()
+                }
             }
         }
+    }
 
+    private fun preloadLanguageModels() {
+        val tasks = createPreloadTasks().map { task -> Callable { task.load() } }
         ForkJoinPool.commonPool().invokeAll(tasks).forEach { it.get() }
     }
 
+    private fun createPreloadTasks(): List<PreloadTask> {
+        val featureHashedModel = featureHashedLanguageModel
+        if (featureHashedModel != null) {
+            return listOf(PreloadTask(languages) { featureHashedModel.value })
+        }
+        if (isLanguageModelFusionEnabled) {
+            return ngramLengthsToLoad().map { ngramLength ->
+                PreloadTask(languages) { fusedLanguageModels[ngramLength - 1].value }
+            }
+        }
+        if (isPrefixTrieEnabled) {
+            return languages.map { language -> PreloadTask(setOf(language)) { trieLanguageModels.getOrLoad(language) } }
+        }
+        val tasks = mutableListOf<PreloadTask>()
+
+        for (language in languages) {
+            for (ngramLength in ngramLengthsToLoad()) {
+                tasks.add(PreloadTask(setOf(language)) { languageModels[ngramLength - 1].getOrLoad(language) })
+                if (bloomFilters != null && ngramLength in BLOOM_FILTERED_NGRAM_LENGTHS) {
+                    val bloomFilterRegistry = bloomFilters[ngramLength - BLOOM_FILTERED_NGRAM_LENGTHS.first]
+                    tasks.add(PreloadTask(setOf(language)) { bloomFilterRegistry.getOrLoad(language) })
+                }
+            }
+        }
+
+        return tasks
+    }
+
+    private fun ngramLengthsToLoad() = if (isLowAccuracyModeEnabled) (3..3) else (1..5)
+
     override fun equals(other: Any?) = when {
         this === other -> true
         other !is LanguageDetector -> false
         languages != other.languages -> false
         minimumRelativeDistance != other.minimumRelativeDistance -> false
         isLowAccuracyModeEnabled != other.isLowAccuracyModeEnabled -> false
+        memoryMappedLanguageModelsDirectory != other.memoryMappedLanguageModelsDirectory -> false
+        isLanguageModelQuantizationEnabled != other.isLanguageModelQuantizationEnabled -> false
+        isLanguageModelFusionEnabled != other.isLanguageModelFusionEnabled -> false
+        isPrefixTrieEnabled != other.isPrefixTrieEnabled -> false
+        isPerfectHashingEnabled != other.isPerfectHashingEnabled -> false
+        bloomFilterFalsePositiveRate != other.bloomFilterFalsePositiveRate -> false
+        isSortedArrayLayoutEnabled != other.isSortedArrayLayoutEnabled -> false
+        languageModelsDirectory != other.languageModelsDirectory -> false
+        tieredLanguageModelsDirectory != other.tieredLanguageModelsDirectory -> false
+        hotNgramCount != other.hotNgramCount -> false
+        featureHashingBucketCount != other.featureHashingBucketCount -> false
+        isScriptPartitioningEnabled != other.isScriptPartitioningEnabled -> false
+        isLanguageModelClusteringEnabled != other.isLanguageModelClusteringEnabled -> false
+        languageModelMemoryBudget != other.languageModelMemoryBudget -> false
+        cascadeConfidenceMargin != other.cascadeConfidenceMargin -> false
         else -> true
     }
 
     override fun hashCode() =
-        31 * languages.hashCode() + minimumRelativeDistance.hashCode() + isLowAccuracyModeEnabled.hashCode()
+        31 * languages.hashCode() + minimumRelativeDistance.hashCode() + isLowAccuracyModeEnabled.hashCode() +
+            memoryMappedLanguageModelsDirectory.hashCode() + isLanguageModelQuantizationEnabled.hashCode() +
+            isLanguageModelFusionEnabled.hashCode() + isPrefixTrieEnabled.hashCode() +
+            isPerfectHashingEnabled.hashCode() + bloomFilterFalsePositiveRate.hashCode() +
+            isSortedArrayLayoutEnabled.hashCode() + languageModelsDirectory.hashCode() +
+            tieredLanguageModelsDirectory.hashCode() + hotNgramCount.hashCode() + featureHashingBucketCount.hashCode() +
+            isScriptPartitioningEnabled.hashCode() + isLanguageModelClusteringEnabled.hashCode() +
+            languageModelMemoryBudget.hashCode() + cascadeConfidenceMargin.hashCode()
 
     internal companion object {
         private const val HIGH_ACCURACY_MODE_MAX_TEXT_LENGTH = 120
+        private val BLOOM_FILTERED_NGRAM_LENGTHS = 4..5
+
+        private val leaseCleaner = Cleaner.create()
+        private val ALL_ALPHABETS: Set<Alphabet> = EnumSet.allOf(Alphabet::class.java)
+
+        internal val unigramLanguageModels = LanguageModelRegistry { HashLanguageModel(loadLogProbabilities(it, 1)) }
+        internal val bigramLanguageModels = LanguageModelRegistry { HashLanguageModel(loadLogProbabilities(it, 2)) }
+        internal val trigramLanguageModels = LanguageModelRegistry { HashLanguageModel(loadLogProbabilities(it, 3)) }
+        internal val quadrigramLanguageModels = LanguageModelRegistry { HashLanguageModel(loadLogProbabilities(it, 4)) }
+        internal val fivegramLanguageModels = LanguageModelRegistry { HashLanguageModel(loadLogProbabilities(it, 5)) }
+
+        private val defaultLanguageModels = listOf(
+            unigramLanguageModels,
+            bigramLanguageModels,
+            trigramLanguageModels,
+            quadrigramLanguageModels,
+            fivegramLanguageModels
+        )
+
+        private val quantizedLanguageModels = (1..5).map { ngramLength ->
+            LanguageModelRegistry { QuantizedLanguageModel.fromLogProbabilities(loadLogProbabilities(it, ngramLength)) }
+        }
+
+        private val perfectHashLanguageModels = (1..5).map { ngramLength ->
+            LanguageModelRegistry {
+                PerfectHashLanguageModel.fromLogProbabilities(loadLogProbabilities(it, ngramLength))
+            }
+        }
+
+        private val sortedArrayLanguageModels = (1..5).map { ngramLength ->
+            LanguageModelRegistry {
+                SortedArrayLanguageModel.fromLogProbabilities(loadLogProbabilities(it, ngramLength))
+            }
+        }
+
+        private val trieLanguageModels = LanguageModelRegistry { language ->
+            TrieLanguageModel.fromLogProbabilities((1..5).map { loadLogProbabilities(language, it) })
+        }
+
+        // the registries created for particular options are kept as long as any detector references them
+        private val bloomFilterRegistries =
+            WeakValueMap<Pair<Double, List<LanguageModelRegistry<*>>>, List<LanguageModelRegistry<BloomFilter>>>()
 
-        internal val unigramLanguageModels = enumMapOf<Language, Object2FloatMap<String>>()
-        internal val bigramLanguageModels = enumMapOf<Language, Object2FloatMap<String>>()
-        internal val trigramLanguageModels = enumMapOf<Language, Object2FloatMap<String>>()
-        internal val quadrigramLanguageModels = enumMapOf<Language, Object2FloatMap<String>>()
-        internal val fivegramLanguageModels = enumMapOf<Language, Object2FloatMap<String>>()
+        private val languageModelCaches = WeakValueMap<Long, LanguageModelCache<HashLanguageModel>>()
 
-        private fun loadLanguageModels(
-            languageModels: EnumMap<Language, Object2FloatMap<String>>,
+        private val memoryMappedLanguageModels = WeakValueMap<Path, List<LanguageModelRegistry<MappedLanguageModel>>>()
+
+        private val directoryLanguageModels = WeakValueMap<Path, List<LanguageModelRegistry<HashLanguageModel>>>()
+
+        private val scriptPartitionedLanguageModels =
+            WeakValueMap<Set<Alphabet>, List<LanguageModelRegistry<HashLanguageModel>>>()
+
+        private val clusteredLanguageModels =
+            WeakValueMap<Set<Set<Language>>, List<LanguageModelRegistry<LanguageModel>>>()
+
+        /**
+         * Returns the registries of the given clusters of languages. The models of all languages
+         * of a cluster are created at once, so that they share their base index. The models of all
+         * other languages are taken from the default registries, so they are not loaded twice.
+         *
+         * Each cluster is created single-flight like the models of a registry: the first thread
+         * asking for a model of the cluster publishes a pending load, and all other threads asking
+         * for a model of the same cluster wait for its result outside of any monitor.
+         */
+        private fun clusteredLanguageModelsOf(clusters: Set<Set<Language>>) = clusteredLanguageModels.computeIfAbsent(
+            clusters
+        ) {
+            (1..5).map { ngramLength ->
+                val pendingClusterLoads =
+                    ConcurrentHashMap<Set<Language>, CompletableFuture<Map<Language, LanguageModel>>>()
+                lateinit var registry: LanguageModelRegistry<LanguageModel>
+                registry = LanguageModelRegistry { language ->
+                    val cluster = clusters.firstOrNull { language in it }
+                        ?: return@LanguageModelRegistry defaultLanguageModels[ngramLength - 1].getOrLoad(language)
+                    loadClusteredLanguageModel(language, cluster, ngramLength, registry, pendingClusterLoads)
+                }
+                registry
+            }
+        }
+
+        private fun loadClusteredLanguageModel(
             language: Language,
-            ngramLength: Int
-        ): Object2FloatMap<String> {
-            synchronized(languageModels) {
-                if (languageModels.containsKey(language)) {
-                    return languageModels.getValue(language)
+            cluster: Set<Language>,
+            ngramLength: Int,
+            registry: LanguageModelRegistry<LanguageModel>,
+            pendingClusterLoads: ConcurrentHashMap<Set<Language>, CompletableFuture<Map<Language, LanguageModel>>>
+        ): LanguageModel {
+            while (true) {
+                val clusterLoad = CompletableFuture<Map<Language, LanguageModel>>()
+                val concurrentClusterLoad = pendingClusterLoads.putIfAbsent(cluster, clusterLoad)
+                if (concurrentClusterLoad == null) {
+                    try {
+                        return loadCluster(language, cluster, ngramLength, registry, clusterLoad).getValue(language)
+                    } finally {
+                        pendingClusterLoads.remove(cluster, clusterLoad)
+                    }
                 }
+                val clusterModels = try {
+                    concurrentClusterLoad.join()
+                } catch (e: CompletionException) {
+                    throw e.cause ?: e
+                }
+                // a pending load which found its own model already created does not hold the others
+                clusterModels[language]?.let { return it }
+            }
+        }
+
+        private fun loadCluster(
+            language: Language,
+            cluster: Set<Language>,
+            ngramLength: Int,
+            registry: LanguageModelRegistry<LanguageModel>,
+            clusterLoad: CompletableFuture<Map<Language, LanguageModel>>
+        ): Map<Language, LanguageModel> {
+            try {
+                // the model may have been created along with another language of the cluster meanwhile
+                val clusterModels = registry[language]?.let { mapOf(language to it) }
+                    ?: ClusteredLanguageModel.fromLogProbabilities(
+                        cluster.associateWith { loadLogProbabilities(it, ngramLength) }
+                    ).also { createdModels ->
+                        for ((clusterLanguage, model) in createdModels) {
+                            if (registry[clusterLanguage] == null) registry[clusterLanguage] = model
+                        }
+                    }
+                clusterLoad.complete(clusterModels)
+                return clusterModels
+            } catch (e: Throwable) {
+                clusterLoad.completeExceptionally(e)
+                throw e
             }
-            val model = loadLanguageModel(language, ngramLength)
-            synchronized(languageModels) {
-                languageModels.putIfAbsent(language, model)
-                return languageModels.getValue(language)
+        }
+
+        internal fun mappedLanguageModelsOf(directoryPath: Path) = memoryMappedLanguageModels.computeIfAbsent(
+            directoryPath
+        ) {
+            (1..5).map { ngramLength ->
+                LanguageModelRegistry { language ->
+                    MappedLanguageModel.load(directoryPath, language, ngramLength) {
+                        loadLogProbabilities(language, ngramLength)
+                    }
+                }
             }
         }
 
-        private fun loadLanguageModel(language: Language, ngramLength: Int): Object2FloatMap<String> {
+        private fun loadLogProbabilities(
+            language: Language,
+            ngramLength: Int,
+            alphabets: Set<Alphabet> = ALL_ALPHABETS
+        ): Long2FloatMap = LanguageModel.toLogProbabilities(loadFrequencies(language, ngramLength, alphabets))
+
+        private fun loadFrequencies(
+            language: Language,
+            ngramLength: Int,
+            alphabets: Set<Alphabet> = ALL_ALPHABETS
+        ): Long2FloatMap {
+            val directoryPath = "/language-models/${language.isoCode639_1}"
+            val binaryInputStreams = alphabets.mapNotNull { alphabet ->
+                Language::class.java.getResourceAsStream(
+                    "$directoryPath/${BinaryLanguageModel.fileNameOf(ngramLength, alphabet)}"
+                )
+            }
+            if (binaryInputStreams.isNotEmpty()) {
+                try {
+                    return BinaryLanguageModel.fromBinary(binaryInputStreams)
+                } finally {
+                    binaryInputStreams.forEach(InputStream::close)
+                }
+            }
             val fileName = "${Ngram.getNgramNameByLength(ngramLength)}s.json"
-            val filePath = "/language-models/${language.isoCode639_1}/$fileName"
-            val inputStream = Language::class.java.getResourceAsStream(filePath) ?: return Object2FloatOpenHashMap()
-            return inputStream.use(TrainingDataLanguageModel::fromJson)
+            val inputStream = Language::class.java.getResourceAsStream("$directoryPath/$fileName")
+                ?: return Long2FloatOpenHashMap()
+            val filter: ((CharSequence) -> Boolean)? =
+                if (alphabets == ALL_ALPHABETS) null else { ngram -> Alphabet.of(ngram) in alphabets }
+            return inputStream.use { JsonLanguageModelReader.read(it, filter) }
+        }
+
+        private fun loadFrequencies(directoryPath: Path, language: Language, ngramLength: Int): Long2FloatMap {
+            val filePath = directoryPath.resolve(language.isoCode639_1.toString())
+                .resolve("${Ngram.getNgramNameByLength(ngramLength)}s.json")
+            if (!Files.isRegularFile(filePath)) {
+                return Long2FloatOpenHashMap()
+            }
+            return Files.newInputStream(filePath).use { JsonLanguageModelReader.read(it) }
         }
     }
 }
+
+/**
+ * Returns the leases of a detector when it is unloaded or has become unreachable without being unloaded.
+ * It must not reference the detector itself, otherwise the detector would never become unreachable.
+ */
+private class LeaseRelease(
+    private val leasedLanguageModels: List<LanguageModelRegistry<*>>,
+    private val leaseGenerations: List<IntArray>,
+    private val languages: List<Language>
+) : Runnable {
+    override fun run() {
+        leasedLanguageModels.forEachIndexed { i, registry ->
+            languages.forEachIndexed { j, language -> registry.release(language, leaseGenerations[i][j]) }
+        }
+    }
+}
+
+private class PreloadTask(val languages: Set<Language>, val load: () -> Unit)
@@ -16,6 +16,9 @@
 
 package com.github.pemistahl.lingua.api
 
+import java.nio.file.Path
+import java.nio.file.Paths
+
 /**
  * Configures and creates an instance of [LanguageDetector].
  */
@@ -23,17 +26,74 @@ class LanguageDetectorBuilder private constructor(
     internal val languages: List<Language>,
     internal var minimumRelativeDistance: Double = 0.0,
     internal var isEveryLanguageModelPreloaded: Boolean = false,
-    internal var isLowAccuracyModeEnabled: Boolean = false
+    internal var isLowAccuracyModeEnabled: Boolean = false,
+    internal var memoryMappedLanguageModelsDirectory: Path? = null,
+    internal var isLanguageModelQuantizationEnabled: Boolean = false,
+    internal var isLanguageModelFusionEnabled: Boolean = false,
+    internal var isPrefixTrieEnabled: Boolean = false,
+    internal var isPerfectHashingEnabled: Boolean = false,
+    internal var bloomFilterFalsePositiveRate: Double? = null,
+    internal var isSortedArrayLayoutEnabled: Boolean = false,
+    internal var languageModelsDirectory: Path? = null,
+    internal var tieredLanguageModelsDirectory: Path? = null,
+    internal var hotNgramCount: Int = 0,
+    internal var featureHashingBucketCount: Int? = null,
+    internal var isScriptPartitioningEnabled: Boolean = false,
+    internal var isLanguageModelClusteringEnabled: Boolean = false,
+    internal var languageModelMemoryBudget: Long? = null,
+    internal var cascadeConfidenceMargin: Double? = null
 ) {
     /**
      * Creates and returns the configured instance of [LanguageDetector].
+     *
+     * The ways of storing the language models chosen with [withMemoryMappedLanguageModels],
+     * [withQuantizedLanguageModels], [withFusedLanguageModels], [withPrefixTrieLanguageModels],
+     * [withPerfectHashLanguageModels], [withSortedArrayLanguageModels], [withLanguageModelsFromDirectory],
+     * [withTieredLanguageModels], [withScriptPartitionedLanguageModels], [withClusteredLanguageModels],
+     * [withFeatureHashedLanguageModels] and [withLanguageModelMemoryBudget] replace each other,
+     * so at most one of them can be chosen.
+     *
+     * @throws [IllegalStateException] if more than one way of storing the language models has been chosen.
      */
-    fun build() = LanguageDetector(
-        languages.toMutableSet(),
-        minimumRelativeDistance,
-        isEveryLanguageModelPreloaded,
-        isLowAccuracyModeEnabled
-    )
+    fun build(): LanguageDetector {
+        val storageModes = listOfNotNull(
+            "withMemoryMappedLanguageModels".takeIf { memoryMappedLanguageModelsDirectory != null },
+            "withQuantizedLanguageModels".takeIf { isLanguageModelQuantizationEnabled },
+            "withFusedLanguageModels".takeIf { isLanguageModelFusionEnabled },
+            "withPrefixTrieLanguageModels".takeIf { isPrefixTrieEnabled },
+            "withPerfectHashLanguageModels".takeIf { isPerfectHashingEnabled },
+            "withSortedArrayLanguageModels".takeIf { isSortedArrayLayoutEnabled },
+            "withLanguageModelsFromDirectory".takeIf { languageModelsDirectory != null },
+            "withTieredLanguageModels".takeIf { tieredLanguageModelsDirectory != null },
+            "withScriptPartitionedLanguageModels".takeIf { isScriptPartitioningEnabled },
+            "withClusteredLanguageModels".takeIf { isLanguageModelClusteringEnabled },
+            "withFeatureHashedLanguageModels".takeIf { featureHashingBucketCount != null },
+            "withLanguageModelMemoryBudget".takeIf { languageModelMemoryBudget != null }
+        )
+        check(storageModes.size <= 1) { "${storageModes[0]}() can not be combined with ${storageModes[1]}()" }
+
+        return LanguageDetector(
+            languages.toMutableSet(),
+            minimumRelativeDistance,
+            isEveryLanguageModelPreloaded,
+            isLowAccuracyModeEnabled,
+            memoryMappedLanguageModelsDirectory = memoryMappedLanguageModelsDirectory,
+            isLanguageModelQuantizationEnabled = isLanguageModelQuantizationEnabled,
+            isLanguageModelFusionEnabled = isLanguageModelFusionEnabled,
+            isPrefixTrieEnabled = isPrefixTrieEnabled,
+            isPerfectHashingEnabled = isPerfectHashingEnabled,
+            bloomFilterFalsePositiveRate = bloomFilterFalsePositiveRate,
+            isSortedArrayLayoutEnabled = isSortedArrayLayoutEnabled,
+            languageModelsDirectory = languageModelsDirectory,
+            tieredLanguageModelsDirectory = tieredLanguageModelsDirectory,
+            hotNgramCount = hotNgramCount,
+            featureHashingBucketCount = featureHashingBucketCount,
+            isScriptPartitioningEnabled = isScriptPartitioningEnabled,
+            isLanguageModelClusteringEnabled = isLanguageModelClusteringEnabled,
+            languageModelMemoryBudget = languageModelMemoryBudget,
+            cascadeConfidenceMargin = cascadeConfidenceMargin
+        )
+    }
 
     /**
      * Sets the desired value for the minimum relative distance measure.
@@ -96,6 +156,295 @@ class LanguageDetectorBuilder private constructor(
         return this
     }
 
+    /**
+     * Stores quantized probabilities in the language models in order to save memory.
+     *
+     * By default, every ngram of a language model is stored together with its probability
+     * as a 4-byte floating point number. In this mode, each language model keeps a table
+     * of its distinct probabilities and every ngram only stores a 1- or 2-byte index into
+     * this table. The largest language models have more distinct probabilities than a
+     * 2-byte index can address, so their probabilities are rounded slightly. The effect
+     * on detection accuracy is negligible.
+     */
+    fun withQuantizedLanguageModels(): LanguageDetectorBuilder {
+        this.isLanguageModelQuantizationEnabled = true
+        return this
+    }
+
+    /**
+     * Fuses the language models of all configured languages into a single index per ngram order
+     * in order to increase performance when many languages are configured.
+     *
+     * By default, each ngram of the input text is looked up separately in the language model
+     * of every language. In this mode, the language models are compiled into one index per
+     * ngram order which maps each ngram to the probabilities of all languages containing it,
+     * so that a single lookup per ngram suffices. As closely related languages share many
+     * of their ngrams, each ngram being stored only once also reduces the memory footprint.
+     * The index belongs to the created instance of [LanguageDetector] and is stored
+     * on the Java heap with full precision.
+     */
+    fun withFusedLanguageModels(): LanguageDetectorBuilder {
+        this.isLanguageModelFusionEnabled = true
+        return this
+    }
+
+    /**
+     * Stores the language models in tables built on a minimal perfect hash function.
+     *
+     * By default, the language models are stored in general-purpose hash maps which
+     * keep a share of their slots empty and resolve collisions by probing further slots.
+     * As the language models never change once they are loaded, a perfect hash function
+     * can be computed for each of them when it is loaded instead. Every ngram then has
+     * a slot of its own without any empty slots, so the language models become smaller
+     * and each lookup reads exactly one slot. Loading takes slightly longer. Each slot keeps
+     * the full ngram, so detection results are the same as with the default language models.
+     */
+    fun withPerfectHashLanguageModels(): LanguageDetectorBuilder {
+        this.isPerfectHashingEnabled = true
+        return this
+    }
+
+    /**
+     * Stores the language models in sorted arrays in order to save memory.
+     *
+     * By default, the language models are stored in hash maps which keep a share of their
+     * slots empty. In this mode, the ngrams of each language model are stored in a sorted
+     * array without any empty slots, next to an array of their probabilities. Ngrams are
+     * looked up with a cache-friendly binary search, which is slower than a hash map lookup.
+     * This layout suits memory-constrained systems, especially in combination with
+     * [withLowAccuracyMode].
+     */
+    fun withSortedArrayLanguageModels(): LanguageDetectorBuilder {
+        this.isSortedArrayLayoutEnabled = true
+        return this
+    }
+
+    /**
+     * Loads the language models from JSON files in a directory instead of from the
+     * models bundled with *Lingua*.
+     *
+     * The directory contains one subdirectory per language named after its ISO 639-1 code,
+     * each holding the files written by [com.github.pemistahl.lingua.api.io.LanguageModelFilesWriter]
+     * or [com.github.pemistahl.lingua.api.io.LanguageModelFilesPruner]. This makes it possible
+     * to use language models which have been pruned to fit into a memory budget. Missing
+     * files are treated as empty language models. Language models loaded from a directory
+     * are stored in hash maps on the Java heap without Bloom filters in front of them.
+     *
+     * @param directoryPath The directory to load the language model files from.
+     */
+    fun withLanguageModelsFromDirectory(directoryPath: Path): LanguageDetectorBuilder {
+        this.languageModelsDirectory = directoryPath.toAbsolutePath()
+        return this
+    }
+
+    /**
+     * Serves the most used ngrams of each language from a small table on the Java heap
+     * and all other ngrams from memory-mapped files.
+     *
+     * In production, a small fraction of the ngrams gets nearly all the lookups. In this mode,
+     * the language models are stored in memory-mapped files below [directoryPath] as described
+     * for [withMemoryMappedLanguageModels]. The ngrams of every text whose language is detected
+     * are counted, and [LanguageDetector.updateHotNgrams] copies the [hotNgramCount] most used
+     * ngrams of each language and ngram order into a hash map on the heap. Counts can also be
+     * recorded from a sample corpus with [LanguageDetector.recordNgramUsage]. The detection
+     * results are the same no matter which tier an ngram is found in.
+     *
+     * @param directoryPath The directory to store the memory-mapped language model files in.
+     * @param hotNgramCount The number of ngrams per language and ngram order to keep on the heap.
+     * @throws [IllegalArgumentException] if [hotNgramCount] is not greater than 0.
+     */
+    fun withTieredLanguageModels(directoryPath: Path, hotNgramCount: Int): LanguageDetectorBuilder {
+        require(hotNgramCount > 0) { "hot ngram count must be greater than 0" }
+        this.tieredLanguageModelsDirectory = directoryPath.toAbsolutePath()
+        this.hotNgramCount = hotNgramCount
+        return this
+    }
+
+    /**
+     * Replaces the language models with a single matrix of fixed size which holds the
+     * log-probabilities of all languages for [bucketCount] buckets of hashed ngrams.
+     *
+     * This mode is approximate: each cell of the matrix keeps only the most probable of the
+     * ngrams of a language falling into its bucket, together with a 16-bit fingerprint of it.
+     * The other ngrams of the bucket are treated as absent, and an absent ngram is mistaken
+     * for the kept one only if their fingerprints match, so detection accuracy drops as the
+     * number of buckets decreases. In exchange, the memory used is fixed at
+     * `bucketCount * number of languages * 4` bytes, and each ngram of the input text is scored
+     * by reading a single contiguous row of the matrix. The matrix is built from the bundled
+     * language models of one language at a time.
+     *
+     * @param bucketCount The number of buckets to hash the ngrams into.
+     * @throws [IllegalArgumentException] if [bucketCount] is not greater than 0.
+     */
+    fun withFeatureHashedLanguageModels(bucketCount: Int): LanguageDetectorBuilder {
+        require(bucketCount > 0) { "bucket count must be greater than 0" }
+        this.featureHashingBucketCount = bucketCount
+        return this
+    }
+
+    /**
+     * Loads only those ngrams from the language models which are written in the
+     * alphabets of the languages to detect.
+     *
+     * The language models of many languages also contain ngrams of other scripts,
+     * such as Cyrillic ngrams in the Serbian or Latin ngrams in the Russian language model.
+     * The bundled language models are split into one partition per alphabet. In this mode,
+     * only the partitions of the alphabets supported by at least one of the languages
+     * to detect are loaded, together with the ngrams mixing several alphabets. This reduces
+     * both loading time and memory consumption if the languages share few alphabets, for
+     * instance when building from [fromAllLanguagesWithLatinScript]. Ngrams of the input text
+     * written in other alphabets are then not found in any language model. The language
+     * models are stored in hash maps on the Java heap.
+     */
+    fun withScriptPartitionedLanguageModels(): LanguageDetectorBuilder {
+        this.isScriptPartitioningEnabled = true
+        return this
+    }
+
+    /**
+     * Stores the language models of closely related languages as a shared base
+     * plus small per-language deltas.
+     *
+     * The language models of Bokmål, Nynorsk and Danish, of Bosnian, Croatian and Serbian,
+     * and of Indonesian and Malay contain largely the same ngrams. In this mode, the ngrams
+     * shared by at least two languages of such a cluster are indexed only once, and each
+     * language stores just its log-probabilities for them plus the ngrams only it contains.
+     * The log-probabilities themselves are not changed, so detection results stay the same.
+     * Languages of a cluster are loaded together, and only those languages of a cluster
+     * which the detector is built from are taken into account.
+     */
+    fun withClusteredLanguageModels(): LanguageDetectorBuilder {
+        this.isLanguageModelClusteringEnabled = true
+        return this
+    }
+
+    /**
+     * Limits the memory occupied by the language models to about [maximumSizeInBytes].
+     *
+     * The language models are kept in a cache which tracks the size of each model. Whenever
+     * loading a model exceeds the budget, the least recently used models of any language and
+     * ngram order are evicted and loaded again when they are needed next. A tight budget thus
+     * trades memory for the time of reloading models, which the counters returned by
+     * [LanguageDetector.getLanguageModelCacheStatistics] help to size. Detection results are
+     * the same as without a budget. All detectors built with the same budget share the cache.
+     * The language models are stored in hash maps on the Java heap.
+     *
+     * @param maximumSizeInBytes The approximate maximum number of bytes of all cached language models.
+     * @throws [IllegalArgumentException] if [maximumSizeInBytes] is not greater than 0.
+     */
+    fun withLanguageModelMemoryBudget(maximumSizeInBytes: Long): LanguageDetectorBuilder {
+        require(maximumSizeInBytes > 0) { "memory budget must be greater than 0" }
+        this.languageModelMemoryBudget = maximumSizeInBytes
+        return this
+    }
+
+    /**
+     * Evaluates the quadrigram and fivegram language models only if the lower ngram orders
+     * do not already decide clearly between the languages.
+     *
+     * In high accuracy mode, the ngrams of all orders from 1 to 5 of a short input text
+     * are looked up for every candidate language. In cascade mode, the unigrams, bigrams
+     * and trigrams are evaluated first. If the confidence value of the second most likely
+     * language is lower than 1.0 by at least [confidenceMargin], their result is returned
+     * right away. Otherwise, the quadrigrams and fivegrams are evaluated as well. For clear
+     * cases, this saves the time of the lookups and the memory of the quadrigram and fivegram
+     * language models, which are only loaded when they are needed first. For these cases,
+     * the confidence values are computed from the lower orders only and thus differ slightly
+     * from those of the high accuracy mode. This mode has no effect in low accuracy mode.
+     *
+     * @param confidenceMargin A value between 0.0 and 1.0 exclusively.
+     * @throws [IllegalArgumentException] if [confidenceMargin] is not between 0.0 and 1.0 exclusively.
+     */
+    fun withCascadeMode(confidenceMargin: Double): LanguageDetectorBuilder {
+        require(confidenceMargin > 0.0 && confidenceMargin < 1.0) {
+            "confidence margin must lie in between 0.0 and 1.0 exclusively"
+        }
+        this.cascadeConfidenceMargin = confidenceMargin
+        return this
+    }
+
+    /**
+     * Evaluates the quadrigram and fivegram language models only if the confidence value
+     * of the second most likely language based on the lower ngram orders is higher than 0.9.
+     *
+     * @see withCascadeMode
+     */
+    fun withCascadeMode(): LanguageDetectorBuilder = withCascadeMode(0.1)
+
+    /**
+     * Puts a Bloom filter in front of each quadrigram and fivegram language model
+     * in order to increase performance.
+     *
+     * Most quadrigrams and fivegrams of an input text are not contained in the language
+     * models of most languages. A Bloom filter rejects most of these absent ngrams with
+     * a few bit checks within a single cache line before the language model is looked up.
+     * The share of absent ngrams which are not rejected is about [falsePositiveRate].
+     * The lower it is, the more memory the filters need: about 1.25 bytes per ngram for
+     * a false-positive rate of 0.01 and about 2.0 bytes per ngram for 0.001.
+     * Detection results are the same with and without Bloom filters. They can be combined
+     * with any other kind of language models, including language models read from a directory,
+     * except for fused, prefix trie and feature-hashed language models, on which they have no effect.
+     *
+     * @param falsePositiveRate A value between 0.0 and 1.0 exclusively.
+     * @throws [IllegalArgumentException] if [falsePositiveRate] is not between 0.0 and 1.0 exclusively.
+     */
+    fun withBloomFilters(falsePositiveRate: Double): LanguageDetectorBuilder {
+        require(falsePositiveRate > 0.0 && falsePositiveRate < 1.0) {
+            "false-positive rate must lie in between 0.0 and 1.0 exclusively"
+        }
+        this.bloomFilterFalsePositiveRate = falsePositiveRate
+        return this
+    }
+
+    /**
+     * Puts a Bloom filter with a false-positive rate of 0.01 in front of each
+     * quadrigram and fivegram language model in order to increase performance.
+     *
+     * @see withBloomFilters
+     */
+    fun withBloomFilters(): LanguageDetectorBuilder = withBloomFilters(0.01)
+
+    /**
+     * Stores the language models of all ngram orders of a language in a single prefix trie.
+     *
+     * By default, if an ngram of the input text is not found in the language model of its
+     * order, the lookup is repeated for its shorter prefixes in the language models of the
+     * lower orders until one of them is found. In this mode, the probability of the longest
+     * known prefix is found by walking along the characters of the ngram only once. The trie
+     * is stored on the Java heap with full precision.
+     */
+    fun withPrefixTrieLanguageModels(): LanguageDetectorBuilder {
+        this.isPrefixTrieEnabled = true
+        return this
+    }
+
+    /**
+     * Stores the language models in memory-mapped files instead of on the Java heap.
+     *
+     * By default, each JVM process holds its own copy of the language models on the heap.
+     * In this mode, the models are written once to files below [directoryPath] and then
+     * mapped into memory. The probabilities live off-heap in the page cache of the
+     * operating system and are shared by all processes on the same host which use the
+     * same directory. This reduces both the heap size and the work of the garbage collector.
+     * Missing model files are created on first use, so the directory should be cleared
+     * whenever a different version of *Lingua* is deployed.
+     *
+     * @param directoryPath The directory to store the memory-mapped language model files in.
+     */
+    fun withMemoryMappedLanguageModels(directoryPath: Path): LanguageDetectorBuilder {
+        this.memoryMappedLanguageModelsDirectory = directoryPath.toAbsolutePath()
+        return this
+    }
+
+    /**
+     * Stores the language models in memory-mapped files in the default temporary-file
+     * directory of the operating system instead of on the Java heap.
+     *
+     * @see withMemoryMappedLanguageModels
+     */
+    fun withMemoryMappedLanguageModels(): LanguageDetectorBuilder =
+        withMemoryMappedLanguageModels(Paths.get(System.getProperty("java.io.tmpdir"), "lingua-language-models"))
+
     companion object {
         /**
          * Creates and returns an instance of LanguageDetectorBuilder
@@ -0,0 +1,39 @@
+/*
+ * Copyright © 2018-today Peter M. Stahl pemistahl@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either expressed or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pemistahl.lingua.api
+
+/**
+ * Counters of the language model cache of a [LanguageDetector] which has been built
+ * with a memory budget for its language models.
+ *
+ * @property hitCount The number of times a language model was needed and already loaded.
+ * For each input text and language, a language model is needed once for each ngram order
+ * whose ngrams are looked up, including the lower orders looked up when an ngram is not found,
+ * and once more for each unigram of the text when the unigrams found are counted. The hit count
+ * thus grows with the length of the input texts, while the [missCount] does not.
+ * @property missCount The number of times a language model was needed and had to be loaded.
+ * @property evictionCount The number of language models which have been evicted to stay within the budget.
+ * @property sizeInBytes The approximate number of bytes of all language models currently in the cache.
+ *
+ * @see LanguageDetectorBuilder.withLanguageModelMemoryBudget
+ */
+data class LanguageModelCacheStatistics(
+    val hitCount: Long,
+    val missCount: Long,
+    val evictionCount: Long,
+    val sizeInBytes: Long
+)
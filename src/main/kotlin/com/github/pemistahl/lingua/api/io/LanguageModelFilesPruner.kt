@@ -0,0 +1,153 @@
+/*
+ * Copyright © 2018-today Peter M. Stahl pemistahl@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either expressed or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pemistahl.lingua.api.io
+
+import com.github.pemistahl.lingua.internal.Fraction
+import com.github.pemistahl.lingua.internal.JsonLanguageModel
+import com.github.pemistahl.lingua.internal.Ngram
+import com.github.pemistahl.lingua.internal.io.FilesWriter
+import it.unimi.dsi.fastutil.HashCommon
+import java.nio.file.Files
+import java.nio.file.Path
+
+object LanguageModelFilesPruner : FilesWriter() {
+
+    /**
+     * Removes the least probable ngrams from the language model files of a single language
+     * until the language models fit into a memory budget, and writes them to a directory.
+     *
+     * The memory a language model needs is estimated as the size of the hash map
+     * it is loaded into by default, that is 12 bytes per slot at a load factor of 0.75.
+     *
+     * @param inputDirectoryPath The directory containing the language model files of a single language,
+     * as written by [LanguageModelFilesWriter]. Missing ngram orders are skipped.
+     * @param outputDirectoryPath The directory where the pruned language model files are to be written.
+     * @param maximumSizeInBytes The memory budget for the language models of all ngram orders together.
+     * @param strategy The way in which to choose the ngrams to remove. Defaults to [PruningStrategy.TOP_K_PER_ORDER].
+     * @return The estimated memory in bytes that the pruned language models need.
+     */
+    @JvmStatic
+    fun pruneAndWriteLanguageModelFiles(
+        inputDirectoryPath: Path,
+        outputDirectoryPath: Path,
+        maximumSizeInBytes: Long,
+        strategy: PruningStrategy = PruningStrategy.TOP_K_PER_ORDER
+    ): Long {
+        checkInputDirectoryPath(inputDirectoryPath)
+        checkOutputDirectoryPath(outputDirectoryPath)
+        require(maximumSizeInBytes >= 0) { "Maximum size in bytes must not be negative" }
+
+        val models = (1..5).mapNotNull { ngramLength ->
+            val fileName = "${Ngram.getNgramNameByLength(ngramLength)}s.json"
+            val modelFilePath = inputDirectoryPath.resolve(fileName)
+            if (Files.isRegularFile(modelFilePath)) {
+                val model = Files.newInputStream(modelFilePath).use(JsonLanguageModel::fromJson)
+                fileName to model
+            } else {
+                null
+            }
+        }
+        val ngramsByOrder = models.map { (_, model) -> sortByDescendingProbability(model) }
+
+        val ngramCounts = when (strategy) {
+            PruningStrategy.TOP_K_PER_ORDER -> findTopKNgramCounts(ngramsByOrder, maximumSizeInBytes)
+            PruningStrategy.MINIMUM_FREQUENCY -> findMinimumFrequencyNgramCounts(ngramsByOrder, maximumSizeInBytes)
+        }
+
+        for ((i, model) in models.withIndex()) {
+            val (fileName, jsonModel) = model
+            val keptNgrams = ngramsByOrder[i].subList(0, ngramCounts[i])
+            val prunedNgrams = keptNgrams.groupBy({ it.first }, { it.second })
+                .mapValues { it.value.joinToString(separator = " ") }
+            writeLanguageModel(JsonLanguageModel(jsonModel.language, prunedNgrams), outputDirectoryPath, fileName)
+        }
+
+        return estimateSizeInBytes(ngramCounts)
+    }
+
+    private fun sortByDescendingProbability(model: JsonLanguageModel): List<Pair<Fraction, String>> {
+        val ngrams = model.ngrams.flatMap { (fraction, ngrams) -> ngrams.split(' ').map { fraction to it } }
+        return ngrams.sortedWith(compareByDescending<Pair<Fraction, String>> { it.first }.thenBy { it.second })
+    }
+
+    private fun findTopKNgramCounts(
+        ngramsByOrder: List<List<Pair<Fraction, String>>>,
+        maximumSizeInBytes: Long
+    ): IntArray {
+        val countsOf = { k: Int -> IntArray(ngramsByOrder.size) { minOf(k, ngramsByOrder[it].size) } }
+        // The size grows monotonically with k, so find the largest k that fits
+        var low = 0
+        var high = ngramsByOrder.maxOfOrNull { it.size } ?: 0
+        while (low < high) {
+            val middle = (low + high + 1).ushr(1)
+            if (estimateSizeInBytes(countsOf(middle)) <= maximumSizeInBytes) low = middle else high = middle - 1
+        }
+        return countsOf(low)
+    }
+
+    private fun findMinimumFrequencyNgramCounts(
+        ngramsByOrder: List<List<Pair<Fraction, String>>>,
+        maximumSizeInBytes: Long
+    ): IntArray {
+        val thresholds = ngramsByOrder.flatMap { ngrams -> ngrams.map { it.first } }.distinct().sortedDescending()
+        val countsOf = { thresholdCount: Int ->
+            IntArray(ngramsByOrder.size) { i ->
+                if (thresholdCount == 0) 0 else countAtLeast(ngramsByOrder[i], thresholds[thresholdCount - 1])
+            }
+        }
+        // Lowering the threshold only ever adds ngrams, so find the lowest threshold that fits
+        var low = 0
+        var high = thresholds.size
+        while (low < high) {
+            val middle = (low + high + 1).ushr(1)
+            if (estimateSizeInBytes(countsOf(middle)) <= maximumSizeInBytes) low = middle else high = middle - 1
+        }
+        return countsOf(low)
+    }
+
+    private fun countAtLeast(ngrams: List<Pair<Fraction, String>>, threshold: Fraction): Int {
+        var low = 0
+        var high = ngrams.size
+        while (low < high) {
+            val middle = (low + high).ushr(1)
+            if (ngrams[middle].first >= threshold) low = middle + 1 else high = middle
+        }
+        return low
+    }
+
+    private fun estimateSizeInBytes(ngramCounts: IntArray): Long {
+        return ngramCounts.sumOf { count ->
+            if (count == 0) 0L else HashCommon.arraySize(count, 0.75F).toLong() * (Long.SIZE_BYTES + Float.SIZE_BYTES)
+        }
+    }
+
+    private fun writeLanguageModel(
+        model: JsonLanguageModel,
+        outputDirectoryPath: Path,
+        fileName: String
+    ) {
+        val modelFilePath = outputDirectoryPath.resolve(fileName)
+
+        if (Files.isRegularFile(modelFilePath)) {
+            Files.delete(modelFilePath)
+        }
+
+        modelFilePath.toFile().bufferedWriter().use { writer ->
+            writer.write(model.toJson())
+        }
+    }
+}
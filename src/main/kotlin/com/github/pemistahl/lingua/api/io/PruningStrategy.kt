@@ -0,0 +1,36 @@
+/*
+ * Copyright © 2018-today Peter M. Stahl pemistahl@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either expressed or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pemistahl.lingua.api.io
+
+/**
+ * The ways in which [LanguageModelFilesPruner] chooses the ngrams
+ * to remove from a language model.
+ */
+enum class PruningStrategy {
+    /**
+     * Keeps the same number of most probable ngrams in each ngram order,
+     * choosing the largest number whose language models fit into the memory budget.
+     */
+    TOP_K_PER_ORDER,
+
+    /**
+     * Keeps all ngrams of all ngram orders whose relative frequency is at least
+     * a common threshold, choosing the smallest threshold whose language models
+     * fit into the memory budget.
+     */
+    MINIMUM_FREQUENCY
+}
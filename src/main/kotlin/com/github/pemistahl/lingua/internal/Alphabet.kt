@@ -63,6 +63,12 @@ internal enum class Alphabet {
     }
 
     companion object {
+        /**
+         * Returns the alphabet which all characters of the given ngram belong to
+         * or [NONE] if they belong to different alphabets or to none of them.
+         */
+        fun of(ngram: CharSequence): Alphabet = values().firstOrNull { it != NONE && it.matches(ngram) } ?: NONE
+
         fun allSupportingExactlyOneLanguage(): Map<Alphabet, Language> {
             val alphabets = mutableMapOf<Alphabet, Language>()
             for (alphabet in values().filterNot { it == NONE }) {
@@ -0,0 +1,305 @@
+/*
+ * Copyright © 2018-today Peter M. Stahl pemistahl@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either expressed or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pemistahl.lingua.internal
+
+import it.unimi.dsi.fastutil.HashCommon
+import it.unimi.dsi.fastutil.longs.Long2FloatMap
+import it.unimi.dsi.fastutil.longs.Long2FloatOpenHashMap
+import it.unimi.dsi.fastutil.objects.Object2FloatMap
+import java.io.ByteArrayOutputStream
+import java.io.DataOutputStream
+import java.io.EOFException
+import java.io.InputStream
+import java.io.OutputStream
+import java.util.concurrent.Callable
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.ForkJoinTask
+import kotlin.math.min
+
+/**
+ * Compact binary representation of a language model which is generated
+ * from the JSON language models at build time.
+ *
+ * Layout:
+ * ```
+ * int     magic number (big-endian)
+ * int     version of the fivegram alphabet of PackedNgram (big-endian)
+ * byte    ngram length n
+ * varint  number of ngrams
+ * varint  number of distinct frequencies f
+ * int     f * frequency as float bits (big-endian), in ascending order
+ * varint  number of blocks b
+ * b * (varint number of ngrams in the block, varint number of bytes of the block)
+ * for each block:
+ *     for each ngram of the block, in ascending unsigned order of its key:
+ *         varint  difference between its key, packed with PackedNgram, and the previous key (0 for the first)
+ *         varint  index of its frequency
+ * ```
+ * Varints are unsigned LEB128. As the keys are sorted, their differences are small, so
+ * an ngram mostly takes two to six bytes instead of `2 * n` bytes for its characters
+ * plus its share of the frequency. Every block starts its differences anew, so that the
+ * blocks of a large language model can be decoded on several threads at once. Their
+ * ngrams are then inserted into the shards of a [ShardedLong2FloatMap] on several threads
+ * as well, each shard being allocated with its final size upfront.
+ * The keys are derived from the fixed alphabet table of [PackedNgram] rather than from the
+ * Unicode data of the JDK, so files generated on one Java version can be read on any other.
+ * A file generated with another version of that table is rejected instead of being looked up
+ * with wrong keys. Each language model is split into one file per [Alphabet] of its ngrams.
+ */
+internal object BinaryLanguageModel {
+    const val FILE_EXTENSION = "bin"
+
+    private const val MAGIC_NUMBER = 0x4C4E4734 // "LNG4"
+
+    const val NGRAMS_PER_BLOCK = 16384
+
+    /** Returns the name of the file holding the partition of the given alphabet of a language model. */
+    fun fileNameOf(ngramLength: Int, alphabet: Alphabet): String =
+        "${Ngram.getNgramNameByLength(ngramLength)}s.${alphabet.name.lowercase()}.$FILE_EXTENSION"
+
+    fun fromBinary(binary: InputStream): Long2FloatMap = fromBinary(listOf(binary))
+
+    /**
+     * Decodes several binary language models, such as the script partitions of a single
+     * language model, into one map. Unless [shardCount] is 1, the blocks of all of them are
+     * decoded in parallel and their ngrams are inserted into the shards of the map in parallel.
+     * By default, the number of shards depends on the size of the language model and the
+     * parallelism of the common pool.
+     */
+    fun fromBinary(binaries: List<InputStream>, shardCount: Int = -1): Long2FloatMap {
+        val partitions = binaries.map { readPartition(VarIntReader(it)) }
+        val ngramCount = partitions.sumOf { partition -> partition.blocks.sumOf { it.ngramCount } }
+        val effectiveShardCount = if (shardCount > 0) shardCount else defaultShardCountOf(ngramCount)
+
+        if (effectiveShardCount == 1) {
+            val model = Long2FloatOpenHashMap(ngramCount)
+            for (partition in partitions) {
+                for (block in partition.blocks) {
+                    block.decodeInto(partition.frequencies, model)
+                }
+            }
+            return model
+        }
+
+        val shift = Long.SIZE_BITS - Integer.numberOfTrailingZeros(effectiveShardCount)
+        val decodedBlocks = invokeAll(
+            partitions.flatMap { partition ->
+                partition.blocks.map { block -> Callable { block.decode(partition.frequencies, shift) } }
+            }
+        )
+        val shards = invokeAll(
+            List(effectiveShardCount) { shard ->
+                Callable {
+                    val model = Long2FloatOpenHashMap(decodedBlocks.sumOf { it.shardSizes[shard] })
+                    decodedBlocks.forEach { it.putInto(model, shard, shift) }
+                    model
+                }
+            }
+        )
+        return ShardedLong2FloatMap(shards.toTypedArray())
+    }
+
+    fun toBinary(frequencies: Object2FloatMap<String>, ngramLength: Int, binary: OutputStream) {
+        val packedFrequencies = Long2FloatOpenHashMap(frequencies.size)
+        for (entry in frequencies.object2FloatEntrySet()) {
+            require(entry.key.length == ngramLength) {
+                "ngram '${entry.key}' does not have length $ngramLength"
+            }
+            packedFrequencies.put(PackedNgram.pack(entry.key), entry.floatValue)
+        }
+        check(packedFrequencies.size == frequencies.size) { "ngram keys collide" }
+
+        val distinctFrequencies = packedFrequencies.values.toFloatArray().distinct().sorted()
+        val frequencyIndices = distinctFrequencies.withIndex().associate { (i, frequency) -> frequency to i }
+        val keys = packedFrequencies.keys.toLongArray().sortedWith(Comparator(java.lang.Long::compareUnsigned))
+        val blocks = keys.chunked(NGRAMS_PER_BLOCK).map { blockKeys ->
+            val block = ByteArrayOutputStream()
+            val blockOutput = DataOutputStream(block)
+            var previousKey = 0L
+            for (key in blockKeys) {
+                blockOutput.writeVarLong(key - previousKey)
+                blockOutput.writeVarLong(frequencyIndices.getValue(packedFrequencies.get(key)).toLong())
+                previousKey = key
+            }
+            blockKeys.size to block.toByteArray()
+        }
+
+        val output = DataOutputStream(binary.buffered())
+        output.writeInt(MAGIC_NUMBER)
+        output.writeInt(PackedNgram.ALPHABET_VERSION)
+        output.writeByte(ngramLength)
+        output.writeVarLong(keys.size.toLong())
+        output.writeVarLong(distinctFrequencies.size.toLong())
+        for (frequency in distinctFrequencies) {
+            output.writeInt(frequency.toRawBits())
+        }
+        output.writeVarLong(blocks.size.toLong())
+        for ((blockNgramCount, blockBytes) in blocks) {
+            output.writeVarLong(blockNgramCount.toLong())
+            output.writeVarLong(blockBytes.size.toLong())
+        }
+        for ((_, blockBytes) in blocks) {
+            output.write(blockBytes)
+        }
+
+        output.flush()
+    }
+
+    /**
+     * Returns a power of two of shards which keeps all threads of the common pool busy,
+     * or 1 if the language model is too small to be worth splitting.
+     */
+    private fun defaultShardCountOf(ngramCount: Int): Int {
+        val parallelism = ForkJoinPool.getCommonPoolParallelism()
+        if (parallelism == 1 || ngramCount < 2 * NGRAMS_PER_BLOCK) return 1
+        return HashCommon.nextPowerOfTwo(parallelism)
+    }
+
+    /**
+     * Runs the given tasks in parallel and returns their results. A thread of a pool forks and
+     * joins the tasks, so that while waiting it only helps with these tasks instead of picking up
+     * unrelated tasks of the pool, such as other language models being loaded.
+     */
+    private fun <T> invokeAll(tasks: List<Callable<T>>): List<T> {
+        if (!ForkJoinTask.inForkJoinPool()) {
+            return ForkJoinPool.commonPool().invokeAll(tasks).map { it.get() }
+        }
+        return ForkJoinTask.invokeAll(tasks.map { ForkJoinTask.adapt(it) }).map { it.join() }
+    }
+
+    private fun readPartition(reader: VarIntReader): Partition {
+        check(reader.readInt() == MAGIC_NUMBER) { "Unexpected magic number in binary language model" }
+        val alphabetVersion = reader.readInt()
+        check(alphabetVersion == PackedNgram.ALPHABET_VERSION) {
+            "Binary language model was generated with fivegram alphabet version $alphabetVersion " +
+                "instead of ${PackedNgram.ALPHABET_VERSION}, regenerate it with writeBinaryLanguageModels"
+        }
+        reader.readByte() // ngram length
+        val ngramCount = reader.readVarLong().toInt()
+        val frequencyCount = reader.readVarLong().toInt()
+        val frequencies = FloatArray(frequencyCount) { Float.fromBits(reader.readInt()) }
+        val blockCount = reader.readVarLong().toInt()
+        val blockSizes = List(blockCount) { reader.readVarLong().toInt() to reader.readVarLong().toInt() }
+        val blocks = blockSizes.map { (blockNgramCount, byteCount) ->
+            Block(blockNgramCount, reader.readBytes(byteCount))
+        }
+        check(blocks.sumOf { it.ngramCount } == ngramCount) { "Unexpected number of ngrams in binary language model" }
+        return Partition(frequencies, blocks)
+    }
+
+    private fun DataOutputStream.writeVarLong(value: Long) {
+        var remaining = value
+        while (remaining and 0x7FL.inv() != 0L) {
+            writeByte(((remaining and 0x7F) or 0x80).toInt())
+            remaining = remaining ushr 7
+        }
+        writeByte(remaining.toInt())
+    }
+
+    private class Partition(val frequencies: FloatArray, val blocks: List<Block>)
+
+    private class Block(val ngramCount: Int, private val bytes: ByteArray) {
+        fun decodeInto(frequencies: FloatArray, model: Long2FloatOpenHashMap) {
+            val reader = VarIntReader(bytes)
+            var key = 0L
+            repeat(ngramCount) {
+                key += reader.readVarLong()
+                model.put(key, frequencies[reader.readVarLong().toInt()])
+            }
+        }
+
+        /** Decodes the ngrams of this block and counts how many of them belong to each shard. */
+        fun decode(frequencies: FloatArray, shift: Int): DecodedBlock {
+            val reader = VarIntReader(bytes)
+            val keys = LongArray(ngramCount)
+            val ngramFrequencies = FloatArray(ngramCount)
+            val shardSizes = IntArray(1 shl (Long.SIZE_BITS - shift))
+            var key = 0L
+            for (i in 0 until ngramCount) {
+                key += reader.readVarLong()
+                keys[i] = key
+                ngramFrequencies[i] = frequencies[reader.readVarLong().toInt()]
+                shardSizes[ShardedLong2FloatMap.shardOf(key, shift)]++
+            }
+            return DecodedBlock(keys, ngramFrequencies, shardSizes)
+        }
+    }
+
+    private class DecodedBlock(val keys: LongArray, val frequencies: FloatArray, val shardSizes: IntArray) {
+        fun putInto(model: Long2FloatOpenHashMap, shard: Int, shift: Int) {
+            for (i in keys.indices) {
+                if (ShardedLong2FloatMap.shardOf(keys[i], shift) == shard) {
+                    model.put(keys[i], frequencies[i])
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads from an [InputStream] in large chunks, so that decoding single bytes
+     * does not go through a synchronized or virtual call per byte.
+     */
+    private class VarIntReader private constructor(
+        private val input: InputStream?,
+        private val buffer: ByteArray,
+        private var limit: Int
+    ) {
+        private var position = 0
+
+        constructor(input: InputStream) : this(input, ByteArray(1 shl 16), 0)
+
+        /** Reads from the given bytes, which have already been read completely. */
+        constructor(bytes: ByteArray) : this(null, bytes, bytes.size)
+
+        fun readByte(): Int {
+            if (position == limit) fill()
+            return buffer[position++].toInt() and 0xFF
+        }
+
+        fun readInt(): Int = (readByte() shl 24) or (readByte() shl 16) or (readByte() shl 8) or readByte()
+
+        fun readVarLong(): Long {
+            var value = 0L
+            var shift = 0
+            while (true) {
+                val byte = readByte()
+                value = value or ((byte and 0x7F).toLong() shl shift)
+                if (byte and 0x80 == 0) return value
+                shift += 7
+            }
+        }
+
+        fun readBytes(count: Int): ByteArray {
+            val bytes = ByteArray(count)
+            var copiedCount = 0
+            while (copiedCount < count) {
+                if (position == limit) fill()
+                val chunkSize = min(count - copiedCount, limit - position)
+                System.arraycopy(buffer, position, bytes, copiedCount, chunkSize)
+                position += chunkSize
+                copiedCount += chunkSize
+            }
+            return bytes
+        }
+
+        private fun fill() {
+            limit = input?.read(buffer) ?: -1
+            position = 0
+            if (limit <= 0) throw EOFException("Unexpected end of binary language model")
+        }
+    }
+}
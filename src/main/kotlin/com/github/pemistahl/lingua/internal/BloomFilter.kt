@@ -0,0 +1,178 @@
+/*
+ * Copyright © 2018-today Peter M. Stahl pemistahl@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either expressed or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pemistahl.lingua.internal
+
+import it.unimi.dsi.fastutil.HashCommon
+import it.unimi.dsi.fastutil.longs.LongCollection
+import java.util.function.LongConsumer
+import kotlin.math.ceil
+import kotlin.math.exp
+import kotlin.math.floor
+import kotlin.math.ln
+import kotlin.math.pow
+import kotlin.math.roundToInt
+
+/**
+ * Blocked Bloom filter over packed ngrams which rejects most ngrams absent
+ * from a language model before the language model itself is looked up.
+ *
+ * All bits of an ngram lie within a single block of 512 bits, the size of a
+ * common cache line, so that a lookup touches only one cache line. Ngrams which
+ * have been added are never rejected. As the ngrams are not spread evenly across
+ * the blocks, a blocked filter rejects fewer absent ngrams than a classic Bloom filter
+ * with the same number of bits. The filter is therefore sized for the blocked layout,
+ * so that the share of absent ngrams which are not rejected is at most about the
+ * false-positive rate the filter has been created with.
+ */
+internal class BloomFilter private constructor(
+    private val bits: LongArray,
+    private val hashFunctionCount: Int
+) : MemoryFootprint {
+    /** The number of bytes occupied by the bits of this filter. */
+    override val sizeInBytes: Long
+        get() = bits.size.toLong() * Long.SIZE_BYTES
+
+    fun mightContain(ngram: Long): Boolean {
+        forEachBit(ngram, bits.size / WORDS_PER_BLOCK, hashFunctionCount) { word, mask ->
+            if (bits[word] and mask == 0L) return false
+        }
+        return true
+    }
+
+    companion object {
+        private const val WORDS_PER_BLOCK = 8
+        private const val BITS_PER_BLOCK = WORDS_PER_BLOCK * Long.SIZE_BITS
+        private const val MAX_HASH_FUNCTION_COUNT = 16
+        private const val BIT_INDEX_SIZE = 9
+        private const val BIT_INDICES_PER_HASH = Long.SIZE_BITS / BIT_INDEX_SIZE
+
+        // the bits per ngram are raised in steps of 1% until the false-positive rate of the blocked layout is met
+        private const val BITS_PER_NGRAM_GROWTH = 1.01
+
+        /**
+         * Creates a filter which contains the given packed ngrams and
+         * rejects absent ngrams with the given false-positive rate.
+         */
+        fun fromNgrams(ngrams: LongCollection, falsePositiveRate: Double): BloomFilter =
+            create(ngrams.size, falsePositiveRate) { ngrams.forEach(it) }
+
+        /**
+         * Creates a filter which contains all ngrams of the given, already loaded language model
+         * and rejects absent ngrams with the given false-positive rate.
+         */
+        fun fromLanguageModel(model: LanguageModel, falsePositiveRate: Double): BloomFilter =
+            create(model.size, falsePositiveRate, model::forEachNgram)
+
+        private fun create(
+            ngramCount: Int,
+            falsePositiveRate: Double,
+            forEachNgram: (LongConsumer) -> Unit
+        ): BloomFilter {
+            require(falsePositiveRate > 0.0 && falsePositiveRate < 1.0) {
+                "false-positive rate must lie in between 0.0 and 1.0 exclusively"
+            }
+            // start with the size of a classic Bloom filter, which is a lower bound
+            var bitsPerNgram = -ln(falsePositiveRate) / (ln(2.0) * ln(2.0))
+            while (bitsPerNgram < BITS_PER_BLOCK &&
+                blockedFalsePositiveRateOf(bitsPerNgram, hashFunctionCountOf(bitsPerNgram)) > falsePositiveRate
+            ) {
+                bitsPerNgram *= BITS_PER_NGRAM_GROWTH
+            }
+            val blockCount = maxOf(1, ceil(ngramCount * bitsPerNgram / BITS_PER_BLOCK).toInt())
+            val hashFunctionCount = hashFunctionCountOf(bitsPerNgram)
+            val bits = LongArray(blockCount * WORDS_PER_BLOCK)
+
+            forEachNgram(
+                LongConsumer { ngram ->
+                    forEachBit(ngram, blockCount, hashFunctionCount) { word, mask ->
+                        bits[word] = bits[word] or mask
+                    }
+                }
+            )
+
+            return BloomFilter(bits, hashFunctionCount)
+        }
+
+        private fun hashFunctionCountOf(bitsPerNgram: Double): Int =
+            (bitsPerNgram * ln(2.0)).roundToInt().coerceIn(1, MAX_HASH_FUNCTION_COUNT)
+
+        /**
+         * Returns the false-positive rate of a blocked filter with the given number of bits per ngram.
+         * The number of ngrams per block follows a Poisson distribution, so the rate is averaged over
+         * the false-positive rates of blocks holding each number of ngrams around the mean.
+         */
+        private fun blockedFalsePositiveRateOf(bitsPerNgram: Double, hashFunctionCount: Int): Double {
+            val meanNgramCount = BITS_PER_BLOCK / bitsPerNgram
+            val modeNgramCount = floor(meanNgramCount)
+            val modeProbability =
+                exp(-meanNgramCount + modeNgramCount * ln(meanNgramCount) - lnFactorialOf(modeNgramCount))
+            val minimumProbability = modeProbability * 1e-12
+
+            fun falsePositiveRateOfBlock(ngramCount: Double): Double =
+                (1.0 - (1.0 - 1.0 / BITS_PER_BLOCK).pow(ngramCount * hashFunctionCount)).pow(hashFunctionCount)
+
+            var falsePositiveRate = modeProbability * falsePositiveRateOfBlock(modeNgramCount)
+            var probability = modeProbability
+            var ngramCount = modeNgramCount
+            while (probability > minimumProbability) {
+                probability *= meanNgramCount / (ngramCount + 1)
+                ngramCount++
+                falsePositiveRate += probability * falsePositiveRateOfBlock(ngramCount)
+            }
+            probability = modeProbability
+            ngramCount = modeNgramCount
+            while (ngramCount > 0 && probability > minimumProbability) {
+                probability *= ngramCount / meanNgramCount
+                ngramCount--
+                falsePositiveRate += probability * falsePositiveRateOfBlock(ngramCount)
+            }
+            return falsePositiveRate
+        }
+
+        /** Returns `ln(n!)`, exactly for small [n] and by Stirling's series for larger ones. */
+        private fun lnFactorialOf(n: Double): Double {
+            if (n < 20) return (2..n.toInt()).sumOf { ln(it.toDouble()) }
+            return n * ln(n) - n + 0.5 * ln(2 * Math.PI * n) + 1 / (12 * n)
+        }
+
+        /**
+         * Calls [action] with the index of the word and the mask of each bit of the given ngram.
+         * The block is chosen by the first hash of the ngram. The bits within the block are taken
+         * as 9-bit slices of further hashes, so that they are independent of each other. Double
+         * hashing would place the bits of different ngrams along the same arithmetic progressions,
+         * which raises the false-positive rate noticeably within a block of only 512 bits.
+         */
+        private inline fun forEachBit(
+            ngram: Long,
+            blockCount: Int,
+            hashFunctionCount: Int,
+            action: (Int, Long) -> Unit
+        ) {
+            val hash = HashCommon.mix(ngram)
+            val blockStart = ((hash ushr 1) % blockCount).toInt() * WORDS_PER_BLOCK
+            var bitHash = HashCommon.mix(hash)
+            for (i in 0 until hashFunctionCount) {
+                val slice = i % BIT_INDICES_PER_HASH
+                if (i > 0 && slice == 0) {
+                    bitHash = HashCommon.mix(bitHash)
+                }
+                val bit = (bitHash ushr (slice * BIT_INDEX_SIZE)).toInt() and (BITS_PER_BLOCK - 1)
+                action(blockStart + (bit ushr 6), 1L shl bit)
+            }
+        }
+    }
+}
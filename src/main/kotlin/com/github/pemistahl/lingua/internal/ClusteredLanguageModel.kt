@@ -0,0 +1,119 @@
+/*
+ * Copyright © 2018-today Peter M. Stahl pemistahl@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either expressed or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pemistahl.lingua.internal
+
+import com.github.pemistahl.lingua.api.Language
+import it.unimi.dsi.fastutil.longs.Long2FloatMap
+import it.unimi.dsi.fastutil.longs.Long2FloatMaps
+import it.unimi.dsi.fastutil.longs.Long2FloatOpenHashMap
+import it.unimi.dsi.fastutil.longs.Long2IntMaps
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap
+import java.util.function.LongConsumer
+
+/**
+ * Language model of a single language within a cluster of closely related languages,
+ * such as Bokmål, Nynorsk and Danish, whose language models share most of their ngrams.
+ *
+ * The ngrams contained in at least two languages of the cluster are stored only once
+ * in a [base] index shared by all of them, which maps each ngram to a position. Each
+ * language stores its log-probabilities of these ngrams in a dense array at the same
+ * positions, holding [Float.NEGATIVE_INFINITY] where it lacks the ngram, and all
+ * ngrams only it contains in a small hash map of its own. Lookups thus return
+ * exactly the same values as a [HashLanguageModel] of the same language.
+ */
+internal class ClusteredLanguageModel private constructor(
+    private val base: Long2IntOpenHashMap,
+    private val baseLogProbabilities: FloatArray,
+    private val deltaLogProbabilities: Long2FloatOpenHashMap,
+    private val clusterSize: Int
+) : LanguageModel {
+
+    override val size: Int =
+        baseLogProbabilities.count { it != Float.NEGATIVE_INFINITY } + deltaLogProbabilities.size
+
+    /** Includes an equal share of the base index which is shared by all languages of the cluster. */
+    override val sizeInBytes: Long
+        get() = MemoryFootprint.ofOpenHashMap(base.size, Long.SIZE_BYTES, Int.SIZE_BYTES) / clusterSize +
+            baseLogProbabilities.size.toLong() * Float.SIZE_BYTES +
+            MemoryFootprint.ofOpenHashMap(deltaLogProbabilities.size, Long.SIZE_BYTES, Float.SIZE_BYTES)
+
+    override fun getLogProbability(ngram: Long): Float {
+        val position = base.get(ngram)
+        if (position >= 0) {
+            return baseLogProbabilities[position]
+        }
+        return deltaLogProbabilities.get(ngram)
+    }
+
+    override fun forEachNgram(action: LongConsumer) {
+        for (entry in Long2IntMaps.fastIterable(base)) {
+            if (baseLogProbabilities[entry.intValue] != Float.NEGATIVE_INFINITY) {
+                action.accept(entry.longKey)
+            }
+        }
+        deltaLogProbabilities.keys.forEach(action)
+    }
+
+    companion object {
+        val CLUSTERS: List<Set<Language>> = listOf(
+            setOf(Language.BOKMAL, Language.NYNORSK, Language.DANISH),
+            setOf(Language.BOSNIAN, Language.CROATIAN, Language.SERBIAN),
+            setOf(Language.INDONESIAN, Language.MALAY)
+        )
+
+        /**
+         * Creates the language models of all languages of a cluster from their log-probabilities.
+         */
+        fun fromLogProbabilities(
+            logProbabilities: Map<Language, Long2FloatMap>
+        ): Map<Language, ClusteredLanguageModel> {
+            val occurrences = Long2IntOpenHashMap()
+            for (languageLogProbabilities in logProbabilities.values) {
+                for (ngram in languageLogProbabilities.keys) {
+                    occurrences.addTo(ngram, 1)
+                }
+            }
+
+            val base = Long2IntOpenHashMap()
+            base.defaultReturnValue(-1)
+            for (entry in Long2IntMaps.fastIterable(occurrences)) {
+                if (entry.intValue >= 2) {
+                    base.put(entry.longKey, base.size)
+                }
+            }
+            base.trim()
+
+            return logProbabilities.mapValues { (_, languageLogProbabilities) ->
+                val baseLogProbabilities = FloatArray(base.size) { Float.NEGATIVE_INFINITY }
+                val deltaLogProbabilities = Long2FloatOpenHashMap()
+                deltaLogProbabilities.defaultReturnValue(Float.NEGATIVE_INFINITY)
+
+                for (entry in Long2FloatMaps.fastIterable(languageLogProbabilities)) {
+                    val position = base.get(entry.longKey)
+                    if (position >= 0) {
+                        baseLogProbabilities[position] = entry.floatValue
+                    } else {
+                        deltaLogProbabilities.put(entry.longKey, entry.floatValue)
+                    }
+                }
+
+                deltaLogProbabilities.trim()
+                ClusteredLanguageModel(base, baseLogProbabilities, deltaLogProbabilities, logProbabilities.size)
+            }
+        }
+    }
+}
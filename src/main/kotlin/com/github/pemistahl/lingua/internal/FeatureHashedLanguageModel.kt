@@ -0,0 +1,169 @@
+/*
+ * Copyright © 2018-today Peter M. Stahl pemistahl@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either expressed or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pemistahl.lingua.internal
+
+import com.github.pemistahl.lingua.api.Language
+import it.unimi.dsi.fastutil.HashCommon
+import it.unimi.dsi.fastutil.longs.Long2FloatMap
+import it.unimi.dsi.fastutil.longs.Long2FloatMaps
+import kotlin.math.roundToInt
+
+/**
+ * Approximate language model which hashes ngrams into a fixed number of buckets and
+ * stores a dense matrix with one row per bucket and one column per language.
+ *
+ * Each ngram order gets a range of buckets of its own, so that the many quadrigrams and
+ * fivegrams do not crowd out the few unigrams and bigrams. Every cell of the matrix holds
+ * a 16-bit fingerprint of an ngram next to its log-probability, quantized to 16 bits,
+ * so the memory used is `bucketCount * languages.size * 4` bytes, independent of the
+ * number of ngrams. A lookup returns the log-probability of a cell only if the fingerprint
+ * of the ngram matches, so absent ngrams are rejected except for one in 65535 and the
+ * detection can back off to lower orders just as with exact models. If several ngrams
+ * of a language fall into the same cell, only the most probable one is kept and the
+ * others are treated as absent.
+ */
+internal class FeatureHashedLanguageModel private constructor(
+    val languages: List<Language>,
+    val bucketCount: Int,
+    private val cells: IntArray
+) {
+    private val bucketRanges = bucketRangesOf(bucketCount)
+
+    private val languageIndices = IntArray(Language.values().size) { -1 }
+
+    init {
+        for ((i, language) in languages.withIndex()) {
+            languageIndices[language.ordinal] = i
+        }
+    }
+
+    val sizeInBytes: Long
+        get() = cells.size.toLong() * Int.SIZE_BYTES
+
+    /** Returns the index of the first column of the row holding the given packed ngram. */
+    fun rowOf(ngram: Long, ngramLength: Int): Int =
+        bucketOf(hashOf(ngram, ngramLength), ngramLength, bucketRanges) * languages.size
+
+    /** Returns the fingerprint which the cells holding the given packed ngram store. */
+    fun fingerprintOf(ngram: Long, ngramLength: Int): Int = fingerprintOf(hashOf(ngram, ngramLength))
+
+    /** Returns the column of the given language or -1 if this model does not contain it. */
+    fun columnOf(language: Language): Int = languageIndices[language.ordinal]
+
+    /**
+     * Returns the log-probability stored at the given row and column if the cell holds
+     * the given fingerprint, otherwise [Float.NEGATIVE_INFINITY].
+     */
+    fun logProbabilityAt(row: Int, column: Int, fingerprint: Int): Float {
+        val cell = cells[row + column]
+        if (cell ushr FINGERPRINT_SHIFT != fingerprint) return Float.NEGATIVE_INFINITY
+        return -(cell and QUANTIZED_LOG_PROBABILITY_MASK) / QUANTIZATION_SCALE
+    }
+
+    /**
+     * Returns the approximate log-probability of the given packed ngram in the given language
+     * or [Float.NEGATIVE_INFINITY] if the language does not contain it.
+     */
+    fun getLogProbability(language: Language, ngram: Long, ngramLength: Int): Float {
+        val column = columnOf(language)
+        if (column < 0) return Float.NEGATIVE_INFINITY
+        return logProbabilityAt(rowOf(ngram, ngramLength), column, fingerprintOf(ngram, ngramLength))
+    }
+
+    companion object {
+        private const val NGRAM_LENGTH_SEED = -0x61c8864680b583ebL
+        private const val FINGERPRINT_SHIFT = 16
+        private const val QUANTIZED_LOG_PROBABILITY_MASK = (1 shl FINGERPRINT_SHIFT) - 1
+
+        // log-probabilities are stored in steps of 1/1024 down to -64, far below the smallest one of any model
+        private const val QUANTIZATION_SCALE = 1024F
+
+        // shares of the buckets for each ngram order, roughly following the number of their ngrams
+        private val BUCKET_SHARES = floatArrayOf(0.05F, 0.10F, 0.20F, 0.30F, 0.35F)
+
+        /**
+         * Creates a model with [bucketCount] buckets for the given languages. The language
+         * models returned by [loader] for each language and ngram length are hashed into the
+         * matrix one at a time, so that they do not need to be held in memory all at once.
+         */
+        fun fromLanguageModels(
+            languages: Collection<Language>,
+            bucketCount: Int,
+            loader: (Language, Int) -> Long2FloatMap
+        ): FeatureHashedLanguageModel {
+            require(bucketCount > 0) { "bucket count must be greater than 0" }
+
+            val sortedLanguages = languages.sortedBy { it.ordinal }
+            val languageCount = sortedLanguages.size
+            require(bucketCount.toLong() * languageCount <= Int.MAX_VALUE) {
+                "$bucketCount buckets for $languageCount languages do not fit into a single array"
+            }
+
+            val bucketRanges = bucketRangesOf(bucketCount)
+            // an empty cell holds fingerprint 0, which no ngram has
+            val cells = IntArray(bucketCount * languageCount)
+
+            for ((column, language) in sortedLanguages.withIndex()) {
+                for (ngramLength in 1..5) {
+                    for (entry in Long2FloatMaps.fastIterable(loader(language, ngramLength))) {
+                        val hash = hashOf(entry.longKey, ngramLength)
+                        val index = bucketOf(hash, ngramLength, bucketRanges) * languageCount + column
+                        val quantizedLogProbability = (-entry.floatValue * QUANTIZATION_SCALE).roundToInt()
+                            .coerceIn(0, QUANTIZED_LOG_PROBABILITY_MASK)
+                        val storedQuantizedLogProbability = cells[index] and QUANTIZED_LOG_PROBABILITY_MASK
+                        // a smaller quantized value stands for a larger log-probability
+                        if (cells[index] == 0 || quantizedLogProbability < storedQuantizedLogProbability) {
+                            cells[index] = fingerprintOf(hash) shl FINGERPRINT_SHIFT or quantizedLogProbability
+                        }
+                    }
+                }
+            }
+
+            return FeatureHashedLanguageModel(sortedLanguages, bucketCount, cells)
+        }
+
+        private fun hashOf(ngram: Long, ngramLength: Int): Long =
+            HashCommon.mix(ngram + ngramLength * NGRAM_LENGTH_SEED)
+
+        /**
+         * Returns the first bucket of each ngram order followed by the number of its buckets.
+         * If there are fewer buckets than orders, several orders share the same bucket.
+         */
+        private fun bucketRangesOf(bucketCount: Int): IntArray {
+            val bucketRanges = IntArray(2 * BUCKET_SHARES.size)
+            var share = 0F
+            for (i in BUCKET_SHARES.indices) {
+                val firstBucket = (share * bucketCount).toInt()
+                share += BUCKET_SHARES[i]
+                val endBucket = if (i == BUCKET_SHARES.lastIndex) bucketCount else (share * bucketCount).toInt()
+                bucketRanges[2 * i] = minOf(firstBucket, bucketCount - 1)
+                bucketRanges[2 * i + 1] = maxOf(1, endBucket - firstBucket)
+            }
+            return bucketRanges
+        }
+
+        /** Returns the bucket of the given hash within the range of buckets of the given ngram order. */
+        private fun bucketOf(hash: Long, ngramLength: Int, bucketRanges: IntArray): Int {
+            val firstBucket = bucketRanges[2 * (ngramLength - 1)]
+            val bucketCount = bucketRanges[2 * ngramLength - 1]
+            // the lower 48 bits choose the bucket, the upper 16 bits are the fingerprint
+            return firstBucket + ((hash and 0xFFFFFFFFFFFFL) % bucketCount).toInt()
+        }
+
+        private fun fingerprintOf(hash: Long): Int = maxOf(1, (hash ushr 48).toInt())
+    }
+}
@@ -16,6 +16,7 @@
 
 package com.github.pemistahl.lingua.internal
 
+import com.squareup.moshi.FromJson
 import com.squareup.moshi.ToJson
 
 internal data class Fraction(
@@ -173,4 +174,9 @@ internal data class Fraction(
 
 internal class FractionAdapter {
     @ToJson fun toJson(fraction: Fraction): String = fraction.toString()
+
+    @FromJson fun fromJson(fraction: String): Fraction {
+        val (numerator, denominator) = fraction.split('/')
+        return Fraction(numerator.toInt(), denominator.toInt())
+    }
 }
@@ -0,0 +1,113 @@
+/*
+ * Copyright © 2018-today Peter M. Stahl pemistahl@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either expressed or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pemistahl.lingua.internal
+
+import com.github.pemistahl.lingua.api.Language
+import it.unimi.dsi.fastutil.ints.IntArrayList
+import it.unimi.dsi.fastutil.longs.Long2FloatMap
+import it.unimi.dsi.fastutil.longs.Long2FloatMaps
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap
+
+/**
+ * Inverted index over the language models of a single ngram order and several languages.
+ *
+ * Every ngram, encoded with [PackedNgram], maps to a position whose entries hold the
+ * ordinals of all languages containing the ngram together with their log-probabilities,
+ * sorted by language ordinal. A single hash lookup per ngram thus yields the
+ * log-probabilities of every language instead of one lookup per language.
+ */
+internal class FusedLanguageModel private constructor(
+    private val positions: Long2IntOpenHashMap,
+    private val entryStarts: IntArray,
+    private val languageOrdinals: ByteArray,
+    private val logProbabilities: FloatArray
+) {
+    /** The number of distinct ngrams in this index. */
+    val size: Int
+        get() = positions.size
+
+    /** Returns the position of the entries of the given packed ngram or -1 if no language contains it. */
+    fun positionOf(ngram: Long): Int = positions.get(ngram)
+
+    /** Returns the index of the first entry at the given position. */
+    fun firstEntryAt(position: Int): Int = entryStarts[position]
+
+    /** Returns the index following the last entry at the given position. */
+    fun endOfEntriesAt(position: Int): Int = entryStarts[position + 1]
+
+    fun languageOrdinalOf(entry: Int): Int = languageOrdinals[entry].toInt()
+
+    fun logProbabilityOf(entry: Int): Float = logProbabilities[entry]
+
+    /**
+     * Returns the log-probability of the given packed ngram in the given language
+     * or [Float.NEGATIVE_INFINITY] if the language does not contain it.
+     */
+    fun getLogProbability(language: Language, ngram: Long): Float {
+        val position = positionOf(ngram)
+        if (position < 0) return Float.NEGATIVE_INFINITY
+        for (entry in firstEntryAt(position) until endOfEntriesAt(position)) {
+            if (languageOrdinalOf(entry) == language.ordinal) {
+                return logProbabilityOf(entry)
+            }
+        }
+        return Float.NEGATIVE_INFINITY
+    }
+
+    companion object {
+        fun fromLogProbabilities(logProbabilities: Map<Language, Long2FloatMap>): FusedLanguageModel {
+            check(Language.values().size <= Byte.MAX_VALUE) { "language ordinals do not fit into a byte" }
+
+            val languages = logProbabilities.keys.sortedBy { it.ordinal }
+            val positions = Long2IntOpenHashMap()
+            val entryCounts = IntArrayList()
+            positions.defaultReturnValue(-1)
+
+            for (language in languages) {
+                for (ngram in logProbabilities.getValue(language).keys) {
+                    val position = positions.putIfAbsent(ngram, entryCounts.size)
+                    if (position < 0) {
+                        entryCounts.add(1)
+                    } else {
+                        entryCounts.set(position, entryCounts.getInt(position) + 1)
+                    }
+                }
+            }
+
+            val entryStarts = IntArray(entryCounts.size + 1)
+            for (position in 0 until entryCounts.size) {
+                entryStarts[position + 1] = entryStarts[position] + entryCounts.getInt(position)
+            }
+
+            val entryCount = entryStarts[entryCounts.size]
+            val languageOrdinals = ByteArray(entryCount)
+            val fusedLogProbabilities = FloatArray(entryCount)
+            val nextEntries = entryStarts.copyOf(entryCounts.size)
+
+            for (language in languages) {
+                for (entry in Long2FloatMaps.fastIterable(logProbabilities.getValue(language))) {
+                    val index = nextEntries[positions.get(entry.longKey)]++
+                    languageOrdinals[index] = language.ordinal.toByte()
+                    fusedLogProbabilities[index] = entry.floatValue
+                }
+            }
+
+            positions.trim()
+            return FusedLanguageModel(positions, entryStarts, languageOrdinals, fusedLogProbabilities)
+        }
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright © 2018-today Peter M. Stahl pemistahl@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either expressed or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pemistahl.lingua.internal
+
+import it.unimi.dsi.fastutil.longs.Long2FloatMap
+import it.unimi.dsi.fastutil.objects.Object2FloatMap
+import java.util.function.LongConsumer
+
+/**
+ * On-heap language model backed by a primitive hash map, so that neither
+ * the ngrams nor the probabilities are stored as objects of their own.
+ * Absent ngrams must map to the default return value [Float.NEGATIVE_INFINITY].
+ */
+internal class HashLanguageModel(internal val logProbabilities: Long2FloatMap) : LanguageModel {
+
+    override val size: Int
+        get() = logProbabilities.size
+
+    override val sizeInBytes: Long
+        get() = MemoryFootprint.ofOpenHashMap(logProbabilities.size, Long.SIZE_BYTES, Float.SIZE_BYTES)
+
+    override fun getLogProbability(ngram: Long): Float = logProbabilities.get(ngram)
+
+    override fun forEachNgram(action: LongConsumer) = logProbabilities.keys.forEach(action)
+
+    companion object {
+        fun fromFrequencies(frequencies: Object2FloatMap<String>) =
+            HashLanguageModel(LanguageModel.toLogProbabilities(PackedNgram.pack(frequencies)))
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright © 2018-today Peter M. Stahl pemistahl@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either expressed or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pemistahl.lingua.internal
+
+import it.unimi.dsi.fastutil.longs.Long2FloatOpenHashMap
+import java.io.IOException
+import java.io.InputStream
+
+/**
+ * Reads the ngrams of a language model JSON file straight into a primitive map.
+ *
+ * The UTF-8 bytes are decoded in a single pass. Fractions are parsed digit by digit and
+ * each ngram is packed as soon as its last character has been read, so that neither the
+ * keys nor the values of the JSON object are materialized as strings.
+ */
+internal class JsonLanguageModelReader private constructor(private val input: InputStream) {
+    private val buffer = ByteArray(BUFFER_SIZE)
+    private var position = 0
+    private var limit = 0
+    private val ngram = NgramBuffer()
+
+    // the low surrogate of a supplementary character whose high surrogate has already been returned
+    private var pendingChar = END_OF_STRING
+
+    private fun read(filter: ((CharSequence) -> Boolean)?): Long2FloatOpenHashMap {
+        val frequencies = Long2FloatOpenHashMap()
+        var ngramCount = 0
+
+        expect('{')
+        do {
+            when (val name = readName()) {
+                LANGUAGE_NAME -> skipString()
+                NGRAMS_NAME -> {
+                    expect('{')
+                    if (!consumeIf('}')) {
+                        do {
+                            val frequency = readFraction()
+                            expect(':')
+                            expect('"')
+                            do {
+                                val hasNextNgram = readNgram()
+                                if (ngram.length > 0 && (filter == null || filter(ngram))) {
+                                    frequencies.put(ngram.pack(), frequency)
+                                    ngramCount++
+                                }
+                            } while (hasNextNgram)
+                        } while (consumeIf(','))
+                        expect('}')
+                    }
+                }
+                else -> throw IOException("Unexpected name '$name' in language model JSON")
+            }
+        } while (consumeIf(','))
+        expect('}')
+
+        check(frequencies.size == ngramCount) { "ngram keys collide" }
+
+        // Trim to reduce in-memory model size
+        frequencies.trim()
+
+        return frequencies
+    }
+
+    private fun readName(): String {
+        expect('"')
+        val name = StringBuilder()
+        var chr = nextStringChar()
+        while (chr != END_OF_STRING) {
+            name.append(chr.toChar())
+            chr = nextStringChar()
+        }
+        expect(':')
+        return name.toString()
+    }
+
+    private fun skipString() {
+        expect('"')
+        do {
+            val chr = nextStringChar()
+        } while (chr != END_OF_STRING)
+    }
+
+    private fun readFraction(): Float {
+        expect('"')
+        val numerator = readInt()
+        if (nextByte() != '/'.code) throw malformed("'/' in fraction")
+        val denominator = readInt()
+        if (nextByte() != '"'.code) throw malformed("end of fraction")
+        return numerator.toFloat() / denominator
+    }
+
+    private fun readInt(): Int {
+        var value = 0
+        var digitCount = 0
+        while (peekByte() in '0'.code..'9'.code) {
+            value = value * 10 + (nextByte() - '0'.code)
+            digitCount++
+        }
+        if (digitCount == 0) throw malformed("digit in fraction")
+        return value
+    }
+
+    /**
+     * Reads the characters of the current string value up to the next space into [ngram].
+     * Returns `false` if the string value has ended instead.
+     */
+    private fun readNgram(): Boolean {
+        ngram.length = 0
+        while (true) {
+            when (val chr = nextStringChar()) {
+                END_OF_STRING -> return false
+                ' '.code -> return true
+                else -> ngram.append(chr.toChar())
+            }
+        }
+    }
+
+    /**
+     * Returns the next decoded UTF-16 code unit of the current string value
+     * or [END_OF_STRING] if its closing quote has been read.
+     */
+    private fun nextStringChar(): Int {
+        if (pendingChar != END_OF_STRING) {
+            val chr = pendingChar
+            pendingChar = END_OF_STRING
+            return chr
+        }
+        val byte = nextByte()
+        return when {
+            byte == '"'.code -> END_OF_STRING
+            byte == '\\'.code -> nextEscapedChar()
+            byte < 0x80 -> byte
+            byte < 0xE0 -> (byte and 0x1F) shl 6 or nextContinuationBits()
+            byte < 0xF0 -> (byte and 0x0F) shl 12 or (nextContinuationBits() shl 6) or nextContinuationBits()
+            else -> {
+                val codePoint = (byte and 0x07) shl 18 or (nextContinuationBits() shl 12) or
+                    (nextContinuationBits() shl 6) or nextContinuationBits()
+                pendingChar = Character.lowSurrogate(codePoint).code
+                Character.highSurrogate(codePoint).code
+            }
+        }
+    }
+
+    private fun nextContinuationBits(): Int {
+        val byte = nextByte()
+        if (byte and 0xC0 != 0x80) throw malformed("UTF-8 continuation byte")
+        return byte and 0x3F
+    }
+
+    private fun nextEscapedChar(): Int = when (val byte = nextByte()) {
+        'b'.code -> '\b'.code
+        'f'.code -> '\u000C'.code
+        'n'.code -> '\n'.code
+        'r'.code -> '\r'.code
+        't'.code -> '\t'.code
+        'u'.code -> {
+            var value = 0
+            repeat(4) {
+                val digit = Character.digit(nextByte(), 16)
+                if (digit < 0) throw malformed("hex digit")
+                value = value shl 4 or digit
+            }
+            value
+        }
+        else -> byte
+    }
+
+    private fun expect(chr: Char) {
+        skipWhitespace()
+        if (nextByte() != chr.code) throw malformed("'$chr'")
+    }
+
+    private fun consumeIf(chr: Char): Boolean {
+        skipWhitespace()
+        if (peekByte() != chr.code) return false
+        position++
+        return true
+    }
+
+    private fun skipWhitespace() {
+        while (peekByte().let { it == ' '.code || it == '\n'.code || it == '\r'.code || it == '\t'.code }) {
+            position++
+        }
+    }
+
+    private fun peekByte(): Int {
+        if (position == limit && !fill()) return END_OF_INPUT
+        return buffer[position].toInt() and 0xFF
+    }
+
+    private fun nextByte(): Int {
+        if (position == limit && !fill()) throw malformed("more input")
+        return buffer[position++].toInt() and 0xFF
+    }
+
+    private fun fill(): Boolean {
+        limit = input.read(buffer)
+        position = 0
+        if (limit > 0) return true
+        limit = 0
+        return false
+    }
+
+    private fun malformed(expected: String) = IOException("Expected $expected in language model JSON")
+
+    private class NgramBuffer : CharSequence {
+        private val chars = CharArray(MAX_NGRAM_LENGTH)
+
+        override var length = 0
+
+        fun append(chr: Char) {
+            if (length == MAX_NGRAM_LENGTH) throw IOException("ngram in language model JSON is too long")
+            chars[length++] = chr
+        }
+
+        fun pack(): Long = PackedNgram.pack(chars, 0, length)
+
+        override fun get(index: Int): Char = chars[index]
+
+        override fun subSequence(startIndex: Int, endIndex: Int): CharSequence =
+            String(chars, startIndex, endIndex - startIndex)
+
+        override fun toString() = String(chars, 0, length)
+    }
+
+    companion object {
+        private const val LANGUAGE_NAME = "language"
+        private const val NGRAMS_NAME = "ngrams"
+        private const val BUFFER_SIZE = 1 shl 16
+        private const val MAX_NGRAM_LENGTH = 5
+        private const val END_OF_INPUT = -1
+        private const val END_OF_STRING = -1
+
+        /**
+         * Returns the packed ngrams of the given language model JSON together with their frequencies.
+         *
+         * @param filter If not null, only the ngrams it accepts are returned. The ngram passed to it
+         * is only valid until it returns.
+         */
+        fun read(json: InputStream, filter: ((CharSequence) -> Boolean)? = null): Long2FloatOpenHashMap =
+            JsonLanguageModelReader(json).read(filter)
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright © 2018-today Peter M. Stahl pemistahl@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either expressed or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pemistahl.lingua.internal
+
+import it.unimi.dsi.fastutil.longs.Long2FloatMap
+import it.unimi.dsi.fastutil.longs.Long2FloatMaps
+import java.util.function.LongConsumer
+import kotlin.math.ln
+
+/**
+ * Read-only language model of a single ngram order which maps ngrams, encoded
+ * with [PackedNgram], to the natural logarithm of their relative frequencies.
+ */
+internal interface LanguageModel : MemoryFootprint {
+    /** The number of ngrams in this model. */
+    val size: Int
+
+    /**
+     * Returns the natural logarithm of the relative frequency of the given packed ngram
+     * or [Float.NEGATIVE_INFINITY], the logarithm of 0, if the model does not contain it.
+     */
+    fun getLogProbability(ngram: Long): Float
+
+    /** Calls [action] with every packed ngram of this model, in no particular order. */
+    fun forEachNgram(action: LongConsumer)
+
+    companion object {
+        /**
+         * Replaces the relative frequencies in the given map by their natural logarithms,
+         * so that they are computed only once when a model is loaded instead of on every lookup.
+         */
+        fun toLogProbabilities(frequencies: Long2FloatMap): Long2FloatMap {
+            for (entry in Long2FloatMaps.fastIterable(frequencies)) {
+                entry.setValue(ln(entry.floatValue))
+            }
+            frequencies.defaultReturnValue(Float.NEGATIVE_INFINITY)
+            return frequencies
+        }
+    }
+}
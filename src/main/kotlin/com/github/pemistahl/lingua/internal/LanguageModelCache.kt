@@ -0,0 +1,111 @@
+/*
+ * Copyright © 2018-today Peter M. Stahl pemistahl@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either expressed or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pemistahl.lingua.internal
+
+import com.github.pemistahl.lingua.api.Language
+import com.github.pemistahl.lingua.api.LanguageModelCacheStatistics
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.LongAdder
+
+/**
+ * Holds the language models of all ngram orders in one [LanguageModelRegistry] per order
+ * and keeps their total size within [maximumSizeInBytes].
+ *
+ * Whenever a model has been loaded and the total size exceeds the budget, the least recently
+ * used models of any language and order are evicted until it fits again. Evicted models are
+ * removed from their registries regardless of any leases on them and are loaded again on
+ * their next use. The model which has just been loaded is never evicted, so a single model
+ * larger than the budget stays loaded until the next one is needed.
+ *
+ * The clock ordering the accesses only advances when a model is loaded, so that accessing
+ * a loaded model on the hot path merely reads it. Models accessed after the same load are
+ * thus equally recent, but more recent than all models loaded or accessed before that load.
+ */
+internal class LanguageModelCache<M : LanguageModel>(
+    val maximumSizeInBytes: Long,
+    loader: (Language, Int) -> M
+) {
+    private val clock = AtomicLong()
+    private val hitCount = LongAdder()
+    private val missCount = LongAdder()
+    private val evictionCount = LongAdder()
+
+    val languageModels: List<LanguageModelRegistry<M>> = (1..5).map { ngramLength ->
+        LanguageModelRegistry(this) { language -> loader(language, ngramLength) }
+    }
+
+    val statistics: LanguageModelCacheStatistics
+        get() = LanguageModelCacheStatistics(
+            hitCount = hitCount.sum(),
+            missCount = missCount.sum(),
+            evictionCount = evictionCount.sum(),
+            sizeInBytes = computeSizeInBytes()
+        )
+
+    /**
+     * Returns a new timestamp for the load of a model, larger than all previous ones.
+     * The clock is advanced by two, so that accesses after this load, which are stamped
+     * with [now], count as more recent than the load itself.
+     */
+    fun tick(): Long = clock.addAndGet(2) - 1
+
+    /** Returns the current timestamp for the access of a loaded model, which only [tick] advances. */
+    fun now(): Long = clock.get()
+
+    fun recordHit() {
+        hitCount.increment()
+    }
+
+    /**
+     * Records that the model of the given language has just been loaded into the given
+     * registry and evicts the least recently used other models while over budget.
+     */
+    @Synchronized
+    fun recordLoad(registry: LanguageModelRegistry<*>, language: Language) {
+        missCount.increment()
+        var sizeInBytes = computeSizeInBytes()
+
+        while (sizeInBytes > maximumSizeInBytes) {
+            var evictedRegistry: LanguageModelRegistry<M>? = null
+            var evictedLanguage = language
+            var oldestAccessTime = Long.MAX_VALUE
+
+            for (candidateRegistry in languageModels) {
+                for (candidateLanguage in Language.values()) {
+                    if (candidateRegistry === registry && candidateLanguage == language) continue
+                    if (candidateRegistry[candidateLanguage] == null) continue
+                    val accessTime = candidateRegistry.lastAccessTimeOf(candidateLanguage)
+                    if (accessTime < oldestAccessTime) {
+                        evictedRegistry = candidateRegistry
+                        evictedLanguage = candidateLanguage
+                        oldestAccessTime = accessTime
+                    }
+                }
+            }
+
+            if (evictedRegistry == null) return
+
+            sizeInBytes -= evictedRegistry[evictedLanguage]?.sizeInBytes ?: 0L
+            evictedRegistry.remove(evictedLanguage)
+            evictionCount.increment()
+        }
+    }
+
+    private fun computeSizeInBytes(): Long = languageModels.sumOf { registry ->
+        Language.values().sumOf { language -> registry[language]?.sizeInBytes ?: 0L }
+    }
+}
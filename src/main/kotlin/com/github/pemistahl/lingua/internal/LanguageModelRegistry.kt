@@ -0,0 +1,188 @@
+/*
+ * Copyright © 2018-today Peter M. Stahl pemistahl@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either expressed or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pemistahl.lingua.internal
+
+import com.github.pemistahl.lingua.api.Language
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CompletionException
+import java.util.concurrent.atomic.AtomicLongArray
+import java.util.concurrent.atomic.AtomicReferenceArray
+
+/**
+ * Holds one language model of type [M] per language, indexed by the ordinal of the language.
+ *
+ * Reading an already loaded model is a single volatile array read without any locking,
+ * so concurrent lookups never contend with each other. Missing models are loaded lazily
+ * with [loader]. Loading is single-flight per language: the first thread asking for a missing
+ * model publishes a pending load, and all other threads asking for it wait for its result
+ * instead of loading it once more. No lock is held while a model is loaded, so loaders may
+ * look up models of other registries without risking a deadlock. Loaders must not wait for
+ * unrelated tasks of the common pool, as the loading thread might pick up a task asking for
+ * the model it is loading itself. Such a request fails instead of waiting forever.
+ *
+ * Registries are shared by all detectors using the same kind of language models. Each
+ * detector [acquires][acquire] a lease on the languages it uses and [releases][release]
+ * it when it unloads its language models. A model is freed only when its last lease is
+ * released, so that unloading one detector does not affect the others.
+ *
+ * If the registry belongs to a [cache], every access of a model is recorded with it,
+ * so that the cache can evict the least recently used models when it is over budget.
+ */
+internal class LanguageModelRegistry<M : MemoryFootprint>(
+    private val cache: LanguageModelCache<*>? = null,
+    private val loader: (Language) -> M
+) {
+    private val models = AtomicReferenceArray<M>(Language.values().size)
+    private val pendingLoads = AtomicReferenceArray<PendingLoad<M>>(Language.values().size)
+    private val leaseLocks = Array(Language.values().size) { Any() }
+    private val lastAccessTimes = AtomicLongArray(if (cache != null) Language.values().size else 0)
+
+    // guarded by the lease lock of the respective language
+    private val leaseCounts = IntArray(Language.values().size)
+
+    // the number of times the leases of each language have been voided by clear(), guarded like leaseCounts
+    private val leaseGenerations = IntArray(Language.values().size)
+
+    operator fun get(language: Language): M? = models.get(language.ordinal)
+
+    operator fun set(language: Language, model: M) {
+        models.set(language.ordinal, model)
+    }
+
+    fun getOrLoad(language: Language): M {
+        val model = models.get(language.ordinal)
+        if (model != null) {
+            recordHit(language)
+            return model
+        }
+        val pendingLoad = PendingLoad<M>(Thread.currentThread())
+        val concurrentLoad = pendingLoads.compareAndExchange(language.ordinal, null, pendingLoad)
+        if (concurrentLoad == null) {
+            return load(language, pendingLoad)
+        }
+        check(concurrentLoad.loadingThread !== Thread.currentThread()) {
+            "language model of $language has been requested again while loading it"
+        }
+        val concurrentlyLoadedModel = try {
+            concurrentLoad.join()
+        } catch (e: CompletionException) {
+            throw e.cause ?: e
+        }
+        recordHit(language)
+        return concurrentlyLoadedModel
+    }
+
+    private fun load(language: Language, pendingLoad: PendingLoad<M>): M {
+        try {
+            // the model may have been loaded between the first read and publishing the pending load
+            val concurrentlyLoadedModel = models.get(language.ordinal)
+            if (concurrentlyLoadedModel != null) {
+                recordHit(language)
+                pendingLoad.complete(concurrentlyLoadedModel)
+                return concurrentlyLoadedModel
+            }
+            val loadedModel = loader(language)
+            models.set(language.ordinal, loadedModel)
+            if (cache != null) {
+                lastAccessTimes.set(language.ordinal, cache.tick())
+                cache.recordLoad(this, language)
+            }
+            pendingLoad.complete(loadedModel)
+            return loadedModel
+        } catch (e: Throwable) {
+            pendingLoad.completeExceptionally(e)
+            throw e
+        } finally {
+            pendingLoads.set(language.ordinal, null)
+        }
+    }
+
+    /** Returns the time of the last access of the model of the given language as counted by the [cache]. */
+    fun lastAccessTimeOf(language: Language): Long = lastAccessTimes.get(language.ordinal)
+
+    /**
+     * Takes a lease on the model of the given language, which keeps it from being freed by [release].
+     *
+     * @return The generation of the lease, which has to be passed to [release].
+     */
+    fun acquire(language: Language): Int {
+        synchronized(leaseLocks[language.ordinal]) {
+            leaseCounts[language.ordinal]++
+            return leaseGenerations[language.ordinal]
+        }
+    }
+
+    /**
+     * Returns a lease taken with [acquire] in the given [generation] and frees the model
+     * of the given language if no other lease on it is left. Leases voided by [clear]
+     * in the meantime are ignored.
+     */
+    fun release(language: Language, generation: Int) {
+        synchronized(leaseLocks[language.ordinal]) {
+            if (generation == leaseGenerations[language.ordinal] && leaseCounts[language.ordinal] > 0) {
+                leaseCounts[language.ordinal]--
+            }
+            removeIfUnleased(language)
+        }
+    }
+
+    /** Frees the model of the given language if nobody holds a lease on it. */
+    fun removeIfUnleased(language: Language) {
+        synchronized(leaseLocks[language.ordinal]) {
+            if (leaseCounts[language.ordinal] == 0) {
+                models.set(language.ordinal, null)
+            }
+        }
+    }
+
+    fun remove(language: Language) {
+        models.set(language.ordinal, null)
+    }
+
+    /** Frees all models, regardless of any leases on them, and voids these leases. */
+    fun clear() {
+        for (i in 0 until models.length()) {
+            synchronized(leaseLocks[i]) {
+                leaseGenerations[i]++
+                leaseCounts[i] = 0
+                models.set(i, null)
+            }
+        }
+    }
+
+    fun isEmpty(): Boolean {
+        for (i in 0 until models.length()) {
+            if (models.get(i) != null) return false
+        }
+        return true
+    }
+
+    fun isNotEmpty(): Boolean = !isEmpty()
+
+    private fun recordHit(language: Language) {
+        if (cache == null) return
+        cache.recordHit()
+        // most hits find the time of the last access up to date, so the shared array is hardly ever written
+        val accessTime = cache.now()
+        if (lastAccessTimes.get(language.ordinal) != accessTime) {
+            lastAccessTimes.set(language.ordinal, accessTime)
+        }
+    }
+}
+
+/** A model being loaded by [loadingThread], which other threads asking for the model wait for. */
+private class PendingLoad<M>(val loadingThread: Thread) : CompletableFuture<M>()
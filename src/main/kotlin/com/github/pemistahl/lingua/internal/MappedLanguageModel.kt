@@ -0,0 +1,170 @@
+/*
+ * Copyright © 2018-today Peter M. Stahl pemistahl@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either expressed or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pemistahl.lingua.internal
+
+import com.github.pemistahl.lingua.api.Language
+import it.unimi.dsi.fastutil.HashCommon
+import it.unimi.dsi.fastutil.longs.Long2FloatMap
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.AtomicMoveNotSupportedException
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardCopyOption.ATOMIC_MOVE
+import java.nio.file.StandardCopyOption.REPLACE_EXISTING
+import java.nio.file.StandardOpenOption.READ
+import java.util.function.LongConsumer
+
+/**
+ * Read-only language model whose open-addressing hash table lives in a memory-mapped file.
+ *
+ * The log-probabilities are kept off-heap in the page cache of the operating system,
+ * so every process on the same host which maps the same file shares a single copy.
+ * Lookups return exactly the same values as the on-heap model the file was created from.
+ *
+ * Layout (big-endian):
+ * ```
+ * int   magic number
+ * int   version of the fivegram alphabet of PackedNgram
+ * int   ngram length
+ * int   number of ngrams
+ * int   number of slots (power of two)
+ * for each slot:
+ *     long  ngram packed with PackedNgram, 0 if the slot is empty
+ *     float natural logarithm of the relative frequency
+ * ```
+ * A file whose fivegram alphabet version differs from [PackedNgram.ALPHABET_VERSION]
+ * is not mapped but replaced, as its keys can not be looked up with the current keys.
+ */
+internal class MappedLanguageModel private constructor(private val buffer: ByteBuffer) : LanguageModel {
+
+    private val mask = buffer.getInt(16) - 1
+
+    override val size: Int = buffer.getInt(12)
+
+    /** The number of bytes of the mapped file, which are held outside of the heap. */
+    override val sizeInBytes: Long
+        get() = buffer.capacity().toLong()
+
+    override fun getLogProbability(ngram: Long): Float {
+        var slot = HashCommon.mix(ngram).toInt() and mask
+        while (true) {
+            val offset = HEADER_SIZE + slot * SLOT_SIZE
+            val key = buffer.getLong(offset)
+            if (key == EMPTY) return Float.NEGATIVE_INFINITY
+            if (key == ngram) return buffer.getFloat(offset + Long.SIZE_BYTES)
+            slot = (slot + 1) and mask
+        }
+    }
+
+    override fun forEachNgram(action: LongConsumer) {
+        for (slot in 0..mask) {
+            val key = buffer.getLong(HEADER_SIZE + slot * SLOT_SIZE)
+            if (key != EMPTY) action.accept(key)
+        }
+    }
+
+    companion object {
+        const val FILE_EXTENSION = "mapped"
+
+        private const val MAGIC_NUMBER = 0x4C4E4D34 // "LNM4"
+        private const val HEADER_SIZE = 20
+        private const val SLOT_SIZE = Long.SIZE_BYTES + Float.SIZE_BYTES
+        private const val EMPTY = 0L
+
+        /**
+         * Maps the model file of the given language and ngram length below [directoryPath].
+         * If the file does not exist yet or is outdated, it is created from the log-probabilities returned by [source].
+         * The file is written to a temporary location first and then moved into place,
+         * so that concurrent processes never observe a partially written file.
+         */
+        fun load(
+            directoryPath: Path,
+            language: Language,
+            ngramLength: Int,
+            source: () -> Long2FloatMap
+        ): MappedLanguageModel {
+            val languageDirectoryPath = directoryPath.resolve(language.isoCode639_1.toString())
+            val fileName = "${Ngram.getNgramNameByLength(ngramLength)}s.$FILE_EXTENSION"
+            val filePath = languageDirectoryPath.resolve(fileName)
+
+            if (!Files.isRegularFile(filePath) || isOutdated(filePath)) {
+                Files.createDirectories(languageDirectoryPath)
+                val temporaryFilePath = Files.createTempFile(languageDirectoryPath, fileName, null)
+                try {
+                    Files.write(temporaryFilePath, toByteArray(source(), ngramLength))
+                    try {
+                        // replaces an outdated file atomically, processes having mapped it keep their copy
+                        Files.move(temporaryFilePath, filePath, ATOMIC_MOVE)
+                    } catch (e: AtomicMoveNotSupportedException) {
+                        Files.move(temporaryFilePath, filePath, REPLACE_EXISTING)
+                    }
+                } finally {
+                    Files.deleteIfExists(temporaryFilePath)
+                }
+            }
+
+            FileChannel.open(filePath, READ).use { channel ->
+                val buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+                check(buffer.getInt(0) == MAGIC_NUMBER) { "Unexpected magic number in file '$filePath'" }
+                return MappedLanguageModel(buffer)
+            }
+        }
+
+        /**
+         * Returns whether the given file holds a language model written by an earlier version
+         * of this class or with another fivegram alphabet. Files which do not hold a language
+         * model at all are not considered outdated, so that they are never overwritten.
+         */
+        private fun isOutdated(filePath: Path): Boolean {
+            val header = ByteBuffer.allocate(2 * Int.SIZE_BYTES)
+            FileChannel.open(filePath, READ).use { channel -> channel.read(header) }
+            if (header.position() < header.capacity()) return false
+            val magicNumber = header.getInt(0)
+            // all versions of the format share the first three bytes of the magic number "LNM"
+            return magicNumber ushr Byte.SIZE_BITS == MAGIC_NUMBER ushr Byte.SIZE_BITS &&
+                (magicNumber != MAGIC_NUMBER || header.getInt(4) != PackedNgram.ALPHABET_VERSION)
+        }
+
+        internal fun toByteArray(logProbabilities: Long2FloatMap, ngramLength: Int): ByteArray {
+            val slotCount = HashCommon.arraySize(logProbabilities.size, 0.75F)
+            val mask = slotCount - 1
+            val buffer = ByteBuffer.allocate(HEADER_SIZE + slotCount * SLOT_SIZE)
+
+            buffer.putInt(MAGIC_NUMBER)
+            buffer.putInt(PackedNgram.ALPHABET_VERSION)
+            buffer.putInt(ngramLength)
+            buffer.putInt(logProbabilities.size)
+            buffer.putInt(slotCount)
+
+            for (entry in logProbabilities.long2FloatEntrySet()) {
+                val ngram = entry.longKey
+                require(ngram != EMPTY) { "ngram key must not be $EMPTY" }
+
+                var slot = HashCommon.mix(ngram).toInt() and mask
+                while (buffer.getLong(HEADER_SIZE + slot * SLOT_SIZE) != EMPTY) {
+                    slot = (slot + 1) and mask
+                }
+                val offset = HEADER_SIZE + slot * SLOT_SIZE
+                buffer.putLong(offset, ngram)
+                buffer.putFloat(offset + Long.SIZE_BYTES, entry.floatValue)
+            }
+
+            return buffer.array()
+        }
+    }
+}
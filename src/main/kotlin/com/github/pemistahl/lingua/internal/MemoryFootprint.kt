@@ -0,0 +1,37 @@
+/*
+ * Copyright © 2018-today Peter M. Stahl pemistahl@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either expressed or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pemistahl.lingua.internal
+
+import it.unimi.dsi.fastutil.Hash
+import it.unimi.dsi.fastutil.HashCommon
+
+/**
+ * Anything held by a [LanguageModelRegistry] whose memory can be accounted for.
+ */
+internal interface MemoryFootprint {
+    /** The approximate number of bytes occupied by this object. */
+    val sizeInBytes: Long
+
+    companion object {
+        /**
+         * Returns the approximate number of bytes of the key and value arrays of a fastutil
+         * open hash map with the given number of entries and the default load factor.
+         */
+        fun ofOpenHashMap(size: Int, keySizeInBytes: Int, valueSizeInBytes: Int): Long =
+            (HashCommon.arraySize(size, Hash.DEFAULT_LOAD_FACTOR) + 1L) * (keySizeInBytes + valueSizeInBytes)
+    }
+}
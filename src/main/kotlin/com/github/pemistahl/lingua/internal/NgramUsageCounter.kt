@@ -0,0 +1,99 @@
+/*
+ * Copyright © 2018-today Peter M. Stahl pemistahl@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either expressed or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pemistahl.lingua.internal
+
+import it.unimi.dsi.fastutil.HashCommon
+import it.unimi.dsi.fastutil.longs.Long2IntMaps
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap
+import java.util.concurrent.locks.ReentrantLock
+
+/**
+ * Counts how often the ngrams of each order are looked up, in order to find
+ * the ngrams worth keeping in the hot tier of a [TieredLanguageModel].
+ *
+ * The counts are spread over several stripes, each guarded by a lock of its own. A thread
+ * records into the first stripe it can lock without waiting, starting at a stripe chosen by
+ * its id, so recording never blocks a concurrent language detection. If all stripes are busy,
+ * the text is not counted, which turns the counts into a sample under heavy contention.
+ * The stripes are only merged when the ngrams are ranked.
+ *
+ * At most [maximumNgramCount] distinct ngrams are tracked per order in each stripe. Once
+ * this limit is reached, only the ngrams already tracked are counted further, so the memory
+ * used by the counter stays bounded no matter how much text is recorded.
+ */
+internal class NgramUsageCounter(private val maximumNgramCount: Int) {
+
+    private val stripes = Array(HashCommon.nextPowerOfTwo(Runtime.getRuntime().availableProcessors())) {
+        Stripe(maximumNgramCount)
+    }
+
+    /**
+     * Records the ngrams of a [TestDataLanguageModel], each followed by the keys of
+     * its lower-order prefixes, as they are looked up during language detection.
+     */
+    fun record(packedNgrams: Array<LongArray>) {
+        val firstStripe = HashCommon.mix(Thread.currentThread().id).toInt()
+        for (i in stripes.indices) {
+            val stripe = stripes[(firstStripe + i) and (stripes.size - 1)]
+            if (stripe.lock.tryLock()) {
+                try {
+                    stripe.record(packedNgrams)
+                } finally {
+                    stripe.lock.unlock()
+                }
+                return
+            }
+        }
+    }
+
+    /**
+     * Returns the recorded ngrams of the given length, the most used ones first.
+     */
+    fun rankedNgrams(ngramLength: Int): LongArray {
+        val mergedCounts = Long2IntOpenHashMap()
+        for (stripe in stripes) {
+            stripe.lock.lock()
+            try {
+                for (entry in Long2IntMaps.fastIterable(stripe.counts[ngramLength - 1])) {
+                    mergedCounts.addTo(entry.longKey, entry.intValue)
+                }
+            } finally {
+                stripe.lock.unlock()
+            }
+        }
+        val ngrams = mergedCounts.keys.toLongArray()
+        return ngrams.sortedByDescending { mergedCounts.get(it) }.take(maximumNgramCount).toLongArray()
+    }
+
+    private class Stripe(private val maximumNgramCount: Int) {
+        val lock = ReentrantLock()
+
+        // guarded by lock
+        val counts = Array(5) { Long2IntOpenHashMap() }
+
+        fun record(packedNgrams: Array<LongArray>) {
+            for (packedNgram in packedNgrams) {
+                for (i in packedNgram.indices) {
+                    val ngramCounts = counts[packedNgram.size - i - 1]
+                    if (ngramCounts.size < maximumNgramCount || ngramCounts.containsKey(packedNgram[i])) {
+                        ngramCounts.addTo(packedNgram[i], 1)
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright © 2018-today Peter M. Stahl pemistahl@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either expressed or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pemistahl.lingua.internal
+
+import it.unimi.dsi.fastutil.HashCommon
+import it.unimi.dsi.fastutil.longs.Long2FloatOpenHashMap
+import it.unimi.dsi.fastutil.objects.Object2FloatMap
+
+/**
+ * Encodes ngrams as primitive `long` keys, so that language models can be stored in
+ * primitive maps and lookups compare integers instead of strings.
+ *
+ * Unigrams up to quadrigrams are encoded losslessly by concatenating their UTF-16 code units.
+ * Fivegrams would need 80 bits this way. Instead, every letter of the scripts which have
+ * fivegram models is mapped to a dense code by a fixed table, and the five codes are combined
+ * as digits of a number in base [radix] which always fits into 63 bits. Fivegrams containing
+ * other characters are mapped to a hash whose sign bit is set, so that they never collide with
+ * a losslessly encoded fivegram. 0 is never the key of an ngram consisting of letters.
+ *
+ * The table holds letters only. Combining marks, such as the vowel signs and viramas of the
+ * Indic scripts and of Thai, are not letters, so they occur neither in the bundled language
+ * models nor in the ngrams of an input text, which both consist of letters only. In the bundled
+ * fivegram models, the hashed fivegrams are mostly those containing Han ideographs, and they
+ * make up less than 0.1% of the fivegrams of any language.
+ */
+internal object PackedNgram {
+    private const val NO_CODE = '\u0000'
+
+    // largest base whose fifth power is still smaller than Long.MAX_VALUE
+    private const val MAX_RADIX = 6208
+
+    /**
+     * The version of [FIVEGRAM_ALPHABET]. It is stored in the header of every file holding
+     * packed ngrams, so that files whose fivegram keys were computed from another table are
+     * detected. It must be incremented whenever the table changes.
+     */
+    const val ALPHABET_VERSION = 1
+
+    /**
+     * Inclusive ranges of the UTF-16 code units which are encoded as dense codes in fivegram keys,
+     * given as pairs of their first and last code unit. The letters get their codes in the order
+     * of this table, starting with 1. The table is fixed instead of being derived from the Unicode
+     * tables of the running JDK, so that keys do not change with the Unicode version of the JDK.
+     * It holds the letters of the scripts which have fivegram models as of Unicode 13.
+     */
+    private val FIVEGRAM_ALPHABET = intArrayOf(
+        0x0041, 0x005A, 0x0061, 0x007A, 0x00AA, 0x00AA, 0x00B5, 0x00B5, 0x00BA, 0x00BA, 0x00C0, 0x00D6,
+        0x00D8, 0x00F6, 0x00F8, 0x02C1, 0x02C6, 0x02D1, 0x02E0, 0x02E4, 0x02EC, 0x02EC, 0x02EE, 0x02EE,
+        0x0370, 0x0374, 0x0376, 0x0377, 0x037A, 0x037D, 0x037F, 0x037F, 0x0386, 0x0386, 0x0388, 0x038A,
+        0x038C, 0x038C, 0x038E, 0x03A1, 0x03A3, 0x03E1, 0x03F0, 0x03F5, 0x03F7, 0x0481, 0x048A, 0x052F,
+        0x0531, 0x0556, 0x0559, 0x0559, 0x0560, 0x0588, 0x05D0, 0x05EA, 0x05EF, 0x05F2, 0x0620, 0x064A,
+        0x066E, 0x066F, 0x0671, 0x06D3, 0x06D5, 0x06D5, 0x06E5, 0x06E6, 0x06EE, 0x06EF, 0x06FA, 0x06FC,
+        0x06FF, 0x06FF, 0x0750, 0x077F, 0x08A0, 0x08B4, 0x08B6, 0x08C7, 0x0904, 0x0939, 0x093D, 0x093D,
+        0x0950, 0x0950, 0x0958, 0x0961, 0x0971, 0x0980, 0x0985, 0x098C, 0x098F, 0x0990, 0x0993, 0x09A8,
+        0x09AA, 0x09B0, 0x09B2, 0x09B2, 0x09B6, 0x09B9, 0x09BD, 0x09BD, 0x09CE, 0x09CE, 0x09DC, 0x09DD,
+        0x09DF, 0x09E1, 0x09F0, 0x09F1, 0x09FC, 0x09FC, 0x0A05, 0x0A0A, 0x0A0F, 0x0A10, 0x0A13, 0x0A28,
+        0x0A2A, 0x0A30, 0x0A32, 0x0A33, 0x0A35, 0x0A36, 0x0A38, 0x0A39, 0x0A59, 0x0A5C, 0x0A5E, 0x0A5E,
+        0x0A72, 0x0A74, 0x0A85, 0x0A8D, 0x0A8F, 0x0A91, 0x0A93, 0x0AA8, 0x0AAA, 0x0AB0, 0x0AB2, 0x0AB3,
+        0x0AB5, 0x0AB9, 0x0ABD, 0x0ABD, 0x0AD0, 0x0AD0, 0x0AE0, 0x0AE1, 0x0AF9, 0x0AF9, 0x0B83, 0x0B83,
+        0x0B85, 0x0B8A, 0x0B8E, 0x0B90, 0x0B92, 0x0B95, 0x0B99, 0x0B9A, 0x0B9C, 0x0B9C, 0x0B9E, 0x0B9F,
+        0x0BA3, 0x0BA4, 0x0BA8, 0x0BAA, 0x0BAE, 0x0BB9, 0x0BD0, 0x0BD0, 0x0C05, 0x0C0C, 0x0C0E, 0x0C10,
+        0x0C12, 0x0C28, 0x0C2A, 0x0C39, 0x0C3D, 0x0C3D, 0x0C58, 0x0C5A, 0x0C60, 0x0C61, 0x0D85, 0x0D96,
+        0x0D9A, 0x0DB1, 0x0DB3, 0x0DBB, 0x0DBD, 0x0DBD, 0x0DC0, 0x0DC6, 0x0E01, 0x0E30, 0x0E32, 0x0E33,
+        0x0E40, 0x0E46, 0x10A0, 0x10C5, 0x10C7, 0x10C7, 0x10CD, 0x10CD, 0x10D0, 0x10FA, 0x10FC, 0x10FF,
+        0x1200, 0x1248, 0x124A, 0x124D, 0x1250, 0x1256, 0x1258, 0x1258, 0x125A, 0x125D, 0x1260, 0x1288,
+        0x128A, 0x128D, 0x1290, 0x12B0, 0x12B2, 0x12B5, 0x12B8, 0x12BE, 0x12C0, 0x12C0, 0x12C2, 0x12C5,
+        0x12C8, 0x12D6, 0x12D8, 0x1310, 0x1312, 0x1315, 0x1318, 0x135A, 0x1380, 0x138F, 0x1C80, 0x1C88,
+        0x1C90, 0x1CBA, 0x1CBD, 0x1CBF, 0x1CE9, 0x1CEC, 0x1CEE, 0x1CF3, 0x1CF5, 0x1CF6, 0x1CFA, 0x1CFA,
+        0x1D00, 0x1DBF, 0x1E00, 0x1F15, 0x1F18, 0x1F1D, 0x1F20, 0x1F45, 0x1F48, 0x1F4D, 0x1F50, 0x1F57,
+        0x1F59, 0x1F59, 0x1F5B, 0x1F5B, 0x1F5D, 0x1F5D, 0x1F5F, 0x1F7D, 0x1F80, 0x1FB4, 0x1FB6, 0x1FBC,
+        0x1FBE, 0x1FBE, 0x1FC2, 0x1FC4, 0x1FC6, 0x1FCC, 0x1FD0, 0x1FD3, 0x1FD6, 0x1FDB, 0x1FE0, 0x1FEC,
+        0x1FF2, 0x1FF4, 0x1FF6, 0x1FFC, 0x2071, 0x2071, 0x207F, 0x207F, 0x2090, 0x209C, 0x2102, 0x2102,
+        0x2107, 0x2107, 0x210A, 0x2113, 0x2115, 0x2115, 0x2119, 0x211D, 0x2124, 0x2124, 0x2126, 0x2126,
+        0x2128, 0x2128, 0x212A, 0x212D, 0x212F, 0x2139, 0x213C, 0x213F, 0x2145, 0x2149, 0x214E, 0x214E,
+        0x2183, 0x2184, 0x2C60, 0x2C7F, 0x2D00, 0x2D25, 0x2D27, 0x2D27, 0x2D2D, 0x2D2D, 0x2D80, 0x2D96,
+        0x2DA0, 0x2DA6, 0x2DA8, 0x2DAE, 0x2DB0, 0x2DB6, 0x2DB8, 0x2DBE, 0x2DC0, 0x2DC6, 0x2DC8, 0x2DCE,
+        0x2DD0, 0x2DD6, 0x2DD8, 0x2DDE, 0x2E2F, 0x2E2F, 0x3006, 0x3006, 0x3031, 0x3035, 0x303C, 0x303C,
+        0x30FC, 0x30FC, 0xA640, 0xA66E, 0xA67F, 0xA69D, 0xA717, 0xA71F, 0xA722, 0xA788, 0xA78B, 0xA7BF,
+        0xA7C2, 0xA7CA, 0xA7F5, 0xA7FF, 0xA8F2, 0xA8F7, 0xA8FB, 0xA8FB, 0xA8FD, 0xA8FE, 0xA9CF, 0xA9CF,
+        0xAB01, 0xAB06, 0xAB09, 0xAB0E, 0xAB11, 0xAB16, 0xAB20, 0xAB26, 0xAB28, 0xAB2E, 0xAB30, 0xAB5A,
+        0xAB5C, 0xAB69, 0xFB00, 0xFB06, 0xFB13, 0xFB17, 0xFB1D, 0xFB1D, 0xFB1F, 0xFB28, 0xFB2A, 0xFB36,
+        0xFB38, 0xFB3C, 0xFB3E, 0xFB3E, 0xFB40, 0xFB41, 0xFB43, 0xFB44, 0xFB46, 0xFBB1, 0xFBD3, 0xFD3D,
+        0xFD50, 0xFD8F, 0xFD92, 0xFDC7, 0xFDF0, 0xFDFB, 0xFE70, 0xFE74, 0xFE76, 0xFEFC, 0xFF21, 0xFF3A,
+        0xFF41, 0xFF5A, 0xFF70, 0xFF70, 0xFF9E, 0xFF9F
+    )
+
+    private val charCodes = CharArray(Char.MAX_VALUE.code + 1)
+    private val codeChars = CharArray(MAX_RADIX)
+    private val radix: Long
+
+    init {
+        var code = 0
+        for (i in FIVEGRAM_ALPHABET.indices step 2) {
+            for (chr in FIVEGRAM_ALPHABET[i]..FIVEGRAM_ALPHABET[i + 1]) {
+                charCodes[chr] = (++code).toChar()
+                codeChars[code] = chr.toChar()
+            }
+        }
+        radix = code + 1L
+        check(radix <= MAX_RADIX) { "$code letters can not be encoded in fivegram keys" }
+    }
+
+    fun pack(ngram: CharSequence): Long = pack(ngram.length) { ngram[it] }
+
+    fun pack(chars: CharArray, offset: Int, length: Int): Long = pack(length) { chars[offset + it] }
+
+    /**
+     * Returns the keys of the given ngram and of all its lower-order prefixes,
+     * starting with the ngram itself and ending with its first character.
+     */
+    fun packWithLowerOrders(ngram: CharSequence): LongArray =
+        LongArray(ngram.length) { i -> pack(ngram.length - i) { ngram[it] } }
+
+    fun pack(frequencies: Object2FloatMap<String>): Long2FloatOpenHashMap {
+        val packedFrequencies = Long2FloatOpenHashMap(frequencies.size)
+        for (entry in frequencies.object2FloatEntrySet()) {
+            packedFrequencies.put(pack(entry.key), entry.floatValue)
+        }
+        check(packedFrequencies.size == frequencies.size) { "ngram keys collide" }
+        return packedFrequencies
+    }
+
+    /**
+     * Restores the ngram of the given length from its key.
+     * Fivegrams which have been packed into a hash can not be restored.
+     */
+    fun unpack(key: Long, length: Int): String {
+        require(length in 1..5) { "length of ngram is not in range 1..5" }
+
+        val chars = CharArray(length)
+        var remainingKey = key
+        if (length < 5) {
+            for (i in length - 1 downTo 0) {
+                chars[i] = (remainingKey and 0xFFFF).toInt().toChar()
+                remainingKey = remainingKey ushr Char.SIZE_BITS
+            }
+        } else {
+            require(key >= 0) { "fivegram has been packed into a hash and can not be unpacked" }
+            for (i in length - 1 downTo 0) {
+                chars[i] = codeChars[(remainingKey % radix).toInt()]
+                remainingKey /= radix
+            }
+        }
+        return String(chars)
+    }
+
+    private inline fun pack(length: Int, charAt: (Int) -> Char): Long {
+        require(length in 1..5) { "length of ngram is not in range 1..5" }
+
+        var key = 0L
+        if (length < 5) {
+            for (i in 0 until length) {
+                key = key shl Char.SIZE_BITS or charAt(i).code.toLong()
+            }
+            return key
+        }
+        for (i in 0 until length) {
+            val code = charCodes[charAt(i).code]
+            if (code == NO_CODE) {
+                return hash(length, charAt)
+            }
+            key = key * radix + code.code
+        }
+        return key
+    }
+
+    private inline fun hash(length: Int, charAt: (Int) -> Char): Long {
+        var hash = 0L
+        for (i in 0 until length) {
+            hash = HashCommon.mix(hash + charAt(i).code + 1)
+        }
+        return hash or Long.MIN_VALUE
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright © 2018-today Peter M. Stahl pemistahl@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either expressed or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pemistahl.lingua.internal
+
+import it.unimi.dsi.fastutil.HashCommon
+import it.unimi.dsi.fastutil.longs.Long2FloatMap
+import it.unimi.dsi.fastutil.longs.Long2FloatMaps
+import java.util.function.LongConsumer
+
+/**
+ * Immutable on-heap language model built on a minimal perfect hash function,
+ * so that every ngram of the model has a slot of its own without any slack
+ * and a lookup never has to follow a probe chain.
+ *
+ * The ngrams are distributed into buckets of about [AVERAGE_BUCKET_SIZE] ngrams each.
+ * Every bucket stores a displacement which maps its ngrams to distinct free slots:
+ * either a seed for a second hash function or, for buckets holding a single ngram,
+ * the slot itself encoded as a negative number. The packed ngram is stored in its slot
+ * next to the log-probability, so that absent ngrams are rejected exactly and lookups
+ * return the same values as the model the table was built from.
+ *
+ * The full packed ngram is stored rather than a short fingerprint of it. A fingerprint
+ * would accept some absent ngrams with the log-probability of another ngram, so detection
+ * results would differ from those of the other language models. Besides, the ngrams
+ * of a model have to be enumerable, for instance to build Bloom filters from them.
+ * Compared to a hash map, the table still saves the slack of its slots.
+ */
+internal class PerfectHashLanguageModel private constructor(
+    private val displacements: IntArray,
+    private val ngrams: LongArray,
+    private val logProbabilities: FloatArray
+) : LanguageModel {
+
+    override val size: Int
+        get() = ngrams.size
+
+    override val sizeInBytes: Long
+        get() = displacements.size.toLong() * Int.SIZE_BYTES + ngrams.size.toLong() * Long.SIZE_BYTES +
+            logProbabilities.size.toLong() * Float.SIZE_BYTES
+
+    override fun getLogProbability(ngram: Long): Float {
+        if (ngrams.isEmpty()) return Float.NEGATIVE_INFINITY
+        val slot = slotOf(ngram)
+        return if (ngrams[slot] == ngram) logProbabilities[slot] else Float.NEGATIVE_INFINITY
+    }
+
+    override fun forEachNgram(action: LongConsumer) = ngrams.forEach(action::accept)
+
+    private fun slotOf(ngram: Long): Int {
+        val displacement = displacements[bucketOf(ngram, displacements.size)]
+        return if (displacement < 0) -displacement - 1 else slotOf(ngram, displacement, ngrams.size)
+    }
+
+    companion object {
+        private const val AVERAGE_BUCKET_SIZE = 4
+        private const val SEED_MULTIPLIER = -0x61c8864680b583ebL // 2^64 divided by the golden ratio
+
+        // a few thousand seeds are typically tried for the last buckets, when hardly any slots are free
+        private const val MAX_SEED = 1 shl 24
+
+        /**
+         * Builds a table of the given log-probabilities.
+         *
+         * @throws [IllegalStateException] if no seed up to [maxSeed] maps the ngrams
+         * of a bucket to free slots.
+         */
+        fun fromLogProbabilities(
+            logProbabilities: Long2FloatMap,
+            maxSeed: Int = MAX_SEED
+        ): PerfectHashLanguageModel {
+            val ngramCount = logProbabilities.size
+            val bucketCount = maxOf(1, (ngramCount + AVERAGE_BUCKET_SIZE - 1) / AVERAGE_BUCKET_SIZE)
+
+            // sort the ngrams by bucket, so that each bucket is a range of bucketedNgrams
+            val bucketStarts = IntArray(bucketCount + 1)
+            for (ngram in logProbabilities.keys) {
+                bucketStarts[bucketOf(ngram, bucketCount) + 1]++
+            }
+            for (bucket in 0 until bucketCount) {
+                bucketStarts[bucket + 1] += bucketStarts[bucket]
+            }
+            val bucketedNgrams = LongArray(ngramCount)
+            val nextPositions = bucketStarts.copyOf(bucketCount)
+            for (ngram in logProbabilities.keys) {
+                bucketedNgrams[nextPositions[bucketOf(ngram, bucketCount)]++] = ngram
+            }
+
+            val displacements = IntArray(bucketCount)
+            val ngrams = LongArray(ngramCount)
+            val isOccupied = BooleanArray(ngramCount)
+            val bucketSizeOf = { bucket: Int -> bucketStarts[bucket + 1] - bucketStarts[bucket] }
+            val bucketSlots = IntArray((0 until bucketCount).maxOf(bucketSizeOf))
+            var nextFreeSlot = 0
+
+            for (bucket in (0 until bucketCount).sortedByDescending(bucketSizeOf)) {
+                val bucketStart = bucketStarts[bucket]
+                val bucketSize = bucketSizeOf(bucket)
+                when (bucketSize) {
+                    0 -> continue
+                    1 -> {
+                        while (isOccupied[nextFreeSlot]) nextFreeSlot++
+                        displacements[bucket] = -nextFreeSlot - 1
+                        bucketSlots[0] = nextFreeSlot
+                    }
+                    else -> {
+                        var seed = 0
+                        while (!findFreeSlots(bucketedNgrams, bucketStart, bucketSize, seed, isOccupied, bucketSlots)) {
+                            check(seed < maxSeed) {
+                                "no seed up to $maxSeed maps the $bucketSize ngrams of a bucket to free slots"
+                            }
+                            seed++
+                        }
+                        displacements[bucket] = seed
+                    }
+                }
+                for (i in 0 until bucketSize) {
+                    isOccupied[bucketSlots[i]] = true
+                    ngrams[bucketSlots[i]] = bucketedNgrams[bucketStart + i]
+                }
+            }
+
+            val slotLogProbabilities = FloatArray(ngramCount)
+            val model = PerfectHashLanguageModel(displacements, ngrams, slotLogProbabilities)
+            for (entry in Long2FloatMaps.fastIterable(logProbabilities)) {
+                val slot = model.slotOf(entry.longKey)
+                check(ngrams[slot] == entry.longKey) { "ngram has not been placed into its slot" }
+                slotLogProbabilities[slot] = entry.floatValue
+            }
+            return model
+        }
+
+        private fun findFreeSlots(
+            bucketedNgrams: LongArray,
+            bucketStart: Int,
+            bucketSize: Int,
+            seed: Int,
+            isOccupied: BooleanArray,
+            slots: IntArray
+        ): Boolean {
+            for (i in 0 until bucketSize) {
+                val slot = slotOf(bucketedNgrams[bucketStart + i], seed, isOccupied.size)
+                if (isOccupied[slot]) return false
+                for (j in 0 until i) {
+                    if (slots[j] == slot) return false
+                }
+                slots[i] = slot
+            }
+            return true
+        }
+
+        private fun bucketOf(ngram: Long, bucketCount: Int): Int =
+            ((HashCommon.mix(ngram) ushr 1) % bucketCount).toInt()
+
+        private fun slotOf(ngram: Long, seed: Int, slotCount: Int): Int =
+            ((HashCommon.mix(ngram + seed * SEED_MULTIPLIER) ushr 1) % slotCount).toInt()
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright © 2018-today Peter M. Stahl pemistahl@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either expressed or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pemistahl.lingua.internal
+
+import it.unimi.dsi.fastutil.longs.Long2ByteOpenHashMap
+import it.unimi.dsi.fastutil.longs.Long2FloatMap
+import it.unimi.dsi.fastutil.longs.Long2FloatMaps
+import it.unimi.dsi.fastutil.longs.Long2ShortOpenHashMap
+import java.util.function.LongConsumer
+
+/**
+ * On-heap language model which stores a 1- or 2-byte index into a per-model codebook
+ * of log-probabilities for every ngram instead of the 4-byte log-probability itself.
+ *
+ * The first codebook entry is always [Float.NEGATIVE_INFINITY], so that absent ngrams
+ * map to index 0. Models with at most 65535 distinct log-probabilities are stored exactly.
+ * Larger models are quantized into 65535 levels of equal width between their smallest
+ * and largest log-probability, each level holding the mean of the values it covers.
+ */
+internal abstract class QuantizedLanguageModel private constructor(
+    protected val codebook: FloatArray
+) : LanguageModel {
+
+    private class NarrowQuantizedLanguageModel(
+        private val indices: Long2ByteOpenHashMap,
+        codebook: FloatArray
+    ) : QuantizedLanguageModel(codebook) {
+        override val size: Int
+            get() = indices.size
+
+        override val sizeInBytes: Long
+            get() = MemoryFootprint.ofOpenHashMap(indices.size, Long.SIZE_BYTES, Byte.SIZE_BYTES) + codebookSizeInBytes
+
+        override fun getLogProbability(ngram: Long): Float = codebook[indices.get(ngram).toInt() and 0xFF]
+
+        override fun forEachNgram(action: LongConsumer) = indices.keys.forEach(action)
+    }
+
+    private class WideQuantizedLanguageModel(
+        private val indices: Long2ShortOpenHashMap,
+        codebook: FloatArray
+    ) : QuantizedLanguageModel(codebook) {
+        override val size: Int
+            get() = indices.size
+
+        override val sizeInBytes: Long
+            get() = MemoryFootprint.ofOpenHashMap(indices.size, Long.SIZE_BYTES, Short.SIZE_BYTES) + codebookSizeInBytes
+
+        override fun getLogProbability(ngram: Long): Float = codebook[indices.get(ngram).toInt() and 0xFFFF]
+
+        override fun forEachNgram(action: LongConsumer) = indices.keys.forEach(action)
+    }
+
+    protected val codebookSizeInBytes: Long
+        get() = codebook.size.toLong() * Float.SIZE_BYTES
+
+    companion object {
+        private const val MAX_NARROW_CODEBOOK_SIZE = 1 shl Byte.SIZE_BITS
+        private const val MAX_WIDE_CODEBOOK_SIZE = 1 shl Short.SIZE_BITS
+
+        fun fromLogProbabilities(logProbabilities: Long2FloatMap): QuantizedLanguageModel {
+            val values = logProbabilities.values.toFloatArray().filter { it.isFinite() }.distinct().sorted()
+            val levelCount = MAX_WIDE_CODEBOOK_SIZE - 1
+            val codebook: FloatArray
+            val indexOf: (Float) -> Int
+
+            if (values.size <= levelCount) {
+                codebook = (listOf(Float.NEGATIVE_INFINITY) + values).toFloatArray()
+                indexOf = { if (it.isFinite()) codebook.binarySearch(it, fromIndex = 1) else 0 }
+            } else {
+                val min = values.first()
+                val width = (values.last() - min) / (levelCount - 1)
+                val levelOf = { value: Float -> ((value - min) / width).toInt().coerceAtMost(levelCount - 1) }
+                val sums = DoubleArray(levelCount)
+                val counts = IntArray(levelCount)
+
+                for (entry in Long2FloatMaps.fastIterable(logProbabilities)) {
+                    if (entry.floatValue.isFinite()) {
+                        val level = levelOf(entry.floatValue)
+                        sums[level] += entry.floatValue.toDouble()
+                        counts[level]++
+                    }
+                }
+
+                val levelIndices = IntArray(levelCount)
+                val levelValues = mutableListOf(Float.NEGATIVE_INFINITY)
+                for (level in 0 until levelCount) {
+                    if (counts[level] > 0) {
+                        levelIndices[level] = levelValues.size
+                        levelValues.add((sums[level] / counts[level]).toFloat())
+                    }
+                }
+                codebook = levelValues.toFloatArray()
+                indexOf = { if (it.isFinite()) levelIndices[levelOf(it)] else 0 }
+            }
+
+            return if (codebook.size <= MAX_NARROW_CODEBOOK_SIZE) {
+                val indices = Long2ByteOpenHashMap(logProbabilities.size)
+                for (entry in Long2FloatMaps.fastIterable(logProbabilities)) {
+                    indices.put(entry.longKey, indexOf(entry.floatValue).toByte())
+                }
+                NarrowQuantizedLanguageModel(indices, codebook)
+            } else {
+                val indices = Long2ShortOpenHashMap(logProbabilities.size)
+                for (entry in Long2FloatMaps.fastIterable(logProbabilities)) {
+                    indices.put(entry.longKey, indexOf(entry.floatValue).toShort())
+                }
+                WideQuantizedLanguageModel(indices, codebook)
+            }
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright © 2018-today Peter M. Stahl pemistahl@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either expressed or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pemistahl.lingua.internal
+
+import it.unimi.dsi.fastutil.HashCommon
+import it.unimi.dsi.fastutil.longs.AbstractLong2FloatMap
+import it.unimi.dsi.fastutil.longs.Long2FloatMap
+import it.unimi.dsi.fastutil.longs.Long2FloatOpenHashMap
+import it.unimi.dsi.fastutil.objects.AbstractObjectSet
+import it.unimi.dsi.fastutil.objects.ObjectIterator
+import it.unimi.dsi.fastutil.objects.ObjectIterators
+import it.unimi.dsi.fastutil.objects.ObjectSet
+
+/**
+ * Map from packed ngrams to floats which is split into a power of two of primitive hash maps
+ * by the high bits of the hash of each key. As every key belongs to exactly one shard, the
+ * shards of a large language model can be filled on several threads at once. A lookup costs
+ * one hash of the key more than a lookup in a single [Long2FloatOpenHashMap]. Apart from
+ * changing the values of its entries, the map is read-only.
+ */
+internal class ShardedLong2FloatMap(private val shards: Array<Long2FloatOpenHashMap>) : AbstractLong2FloatMap() {
+
+    private val shift = Long.SIZE_BITS - Integer.numberOfTrailingZeros(shards.size)
+
+    init {
+        require(shards.size >= 2 && shards.size and (shards.size - 1) == 0) {
+            "number of shards must be a power of two greater than one"
+        }
+    }
+
+    override val size: Int
+        get() = shards.sumOf { it.size }
+
+    override fun get(key: Long): Float = shards[shardOf(key, shift)].get(key)
+
+    override fun containsKey(key: Long): Boolean = shards[shardOf(key, shift)].containsKey(key)
+
+    override fun defaultReturnValue(rv: Float) {
+        super.defaultReturnValue(rv)
+        shards.forEach { it.defaultReturnValue(rv) }
+    }
+
+    @Suppress("UNCHECKED_CAST")
+    override val entries: ObjectSet<MutableMap.MutableEntry<Long, Float>>
+        get() = long2FloatEntrySet() as ObjectSet<MutableMap.MutableEntry<Long, Float>>
+
+    override fun long2FloatEntrySet(): ObjectSet<Long2FloatMap.Entry> = EntrySet()
+
+    private inner class EntrySet : AbstractObjectSet<Long2FloatMap.Entry>() {
+        override val size: Int
+            get() = this@ShardedLong2FloatMap.size
+
+        override fun iterator(): ObjectIterator<Long2FloatMap.Entry> =
+            ObjectIterators.concat(*Array(shards.size) { shards[it].long2FloatEntrySet().iterator() })
+
+        override fun contains(element: Long2FloatMap.Entry): Boolean {
+            val shard = shards[shardOf(element.longKey, shift)]
+            return shard.containsKey(element.longKey) &&
+                shard.get(element.longKey).toRawBits() == element.floatValue.toRawBits()
+        }
+    }
+
+    companion object {
+        /** Returns the shard of the given key among `1 shl (64 - shift)` shards. */
+        fun shardOf(key: Long, shift: Int): Int = (HashCommon.mix(key) ushr shift).toInt()
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright © 2018-today Peter M. Stahl pemistahl@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either expressed or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pemistahl.lingua.internal
+
+import it.unimi.dsi.fastutil.longs.Long2FloatMap
+import java.util.function.LongConsumer
+
+/**
+ * Immutable on-heap language model which stores the packed ngrams in a sorted
+ * primitive array next to a parallel array of their log-probabilities.
+ *
+ * The arrays are not in ascending order but in Eytzinger layout: the sorted ngrams
+ * are arranged like a binary search tree stored breadth-first, starting at index 1,
+ * so that the children of index `i` are at `2i` and `2i + 1`. The first steps of
+ * every search thus read neighbouring elements, which makes the search more cache-friendly
+ * than a binary search over an ascending array. No slot is left empty.
+ */
+internal class SortedArrayLanguageModel private constructor(
+    private val ngrams: LongArray,
+    private val logProbabilities: FloatArray
+) : LanguageModel {
+
+    override val size: Int
+        get() = ngrams.size - 1
+
+    override val sizeInBytes: Long
+        get() = ngrams.size.toLong() * Long.SIZE_BYTES + logProbabilities.size.toLong() * Float.SIZE_BYTES
+
+    override fun getLogProbability(ngram: Long): Float {
+        var index = 1
+        while (index < ngrams.size) {
+            index = 2 * index + if (ngrams[index] < ngram) 1 else 0
+        }
+        // go back up to the last node at which the search descended to the left
+        index = index ushr (Integer.numberOfTrailingZeros(index.inv()) + 1)
+        return if (index != 0 && ngrams[index] == ngram) logProbabilities[index] else Float.NEGATIVE_INFINITY
+    }
+
+    override fun forEachNgram(action: LongConsumer) {
+        // index 0 is not part of the tree
+        for (index in 1 until ngrams.size) {
+            action.accept(ngrams[index])
+        }
+    }
+
+    companion object {
+        fun fromLogProbabilities(logProbabilities: Long2FloatMap): SortedArrayLanguageModel {
+            val sortedNgrams = logProbabilities.keys.toLongArray()
+            sortedNgrams.sort()
+
+            val ngrams = LongArray(sortedNgrams.size + 1)
+            val eytzingerLogProbabilities = FloatArray(sortedNgrams.size + 1)
+            var sortedIndex = 0
+
+            // an in-order traversal of the implicit tree visits its nodes in ascending order
+            fun fill(index: Int) {
+                if (index >= ngrams.size) return
+                fill(2 * index)
+                ngrams[index] = sortedNgrams[sortedIndex++]
+                eytzingerLogProbabilities[index] = logProbabilities.get(ngrams[index])
+                fill(2 * index + 1)
+            }
+            fill(1)
+
+            return SortedArrayLanguageModel(ngrams, eytzingerLogProbabilities)
+        }
+    }
+}
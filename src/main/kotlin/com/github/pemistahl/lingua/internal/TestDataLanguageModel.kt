@@ -17,6 +17,12 @@
 package com.github.pemistahl.lingua.internal
 
 internal data class TestDataLanguageModel(val ngrams: Set<Ngram>) {
+    /**
+     * The ngrams encoded with [PackedNgram]. Each entry holds the key of the ngram itself,
+     * followed by the keys of its lower-order prefixes, so that lookups can back off
+     * to lower orders without creating substrings.
+     */
+    val packedNgrams: Array<LongArray> = ngrams.map { PackedNgram.packWithLowerOrders(it.value) }.toTypedArray()
 
     companion object {
         private val LETTER_REGEX = Regex("\\p{L}+")
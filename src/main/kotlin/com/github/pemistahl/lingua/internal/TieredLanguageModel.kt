@@ -0,0 +1,76 @@
+/*
+ * Copyright © 2018-today Peter M. Stahl pemistahl@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either expressed or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pemistahl.lingua.internal
+
+import it.unimi.dsi.fastutil.longs.Long2FloatOpenHashMap
+import java.util.function.LongConsumer
+
+/**
+ * Language model which serves its most used ngrams from a small on-heap hash map
+ * and all other ngrams from a compact [cold] model, such as a [MappedLanguageModel].
+ *
+ * The hot ngrams are exact copies of the entries of the cold model, so lookups return
+ * the same values no matter which tier answers them. The hot map is never modified after
+ * it has been published, so [promote] can replace it while other threads are reading.
+ */
+internal class TieredLanguageModel(private val cold: LanguageModel) : LanguageModel {
+
+    @Volatile
+    private var hot = createHotMap(0)
+
+    override val size: Int
+        get() = cold.size
+
+    override val sizeInBytes: Long
+        get() = cold.sizeInBytes + MemoryFootprint.ofOpenHashMap(hot.size, Long.SIZE_BYTES, Float.SIZE_BYTES)
+
+    val hotSize: Int
+        get() = hot.size
+
+    override fun getLogProbability(ngram: Long): Float {
+        val logProbability = hot.get(ngram)
+        if (!logProbability.isNaN()) {
+            return logProbability
+        }
+        return cold.getLogProbability(ngram)
+    }
+
+    override fun forEachNgram(action: LongConsumer) = cold.forEachNgram(action)
+
+    /**
+     * Replaces the hot ngrams with the first [maximumCount] of [rankedNgrams]
+     * which are contained in the cold model.
+     */
+    fun promote(rankedNgrams: LongArray, maximumCount: Int) {
+        val newHot = createHotMap(minOf(maximumCount, rankedNgrams.size))
+        for (ngram in rankedNgrams) {
+            if (newHot.size >= maximumCount) break
+            val logProbability = cold.getLogProbability(ngram)
+            if (logProbability != Float.NEGATIVE_INFINITY) {
+                newHot.put(ngram, logProbability)
+            }
+        }
+        newHot.trim()
+        hot = newHot
+    }
+
+    private fun createHotMap(expectedSize: Int): Long2FloatOpenHashMap {
+        val map = Long2FloatOpenHashMap(expectedSize)
+        map.defaultReturnValue(Float.NaN)
+        return map
+    }
+}
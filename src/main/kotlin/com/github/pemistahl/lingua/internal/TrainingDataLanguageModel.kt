@@ -27,7 +27,17 @@ import okio.buffer
 import okio.source
 import java.io.InputStream
 
-internal class JsonLanguageModel(val language: Language, val ngrams: Map<Fraction, String>)
+internal class JsonLanguageModel(val language: Language, val ngrams: Map<Fraction, String>) {
+    fun toJson(): String = JSON_ADAPTER.toJson(this)
+
+    companion object {
+        fun fromJson(json: InputStream): JsonLanguageModel {
+            return checkNotNull(JSON_ADAPTER.fromJson(json.source().buffer())) {
+                "Language model JSON must not be null"
+            }
+        }
+    }
+}
 
 internal class TrainingDataLanguageModel(
     val language: Language,
@@ -40,7 +50,7 @@ internal class TrainingDataLanguageModel(
             ngrams.computeIfAbsent(fraction) { mutableListOf() }.add(ngram)
         }
         val jsonLanguageModel = JsonLanguageModel(language, ngrams.mapValues { it.value.joinToString(separator = " ") })
-        return JSON_ADAPTER.toJson(jsonLanguageModel)
+        return jsonLanguageModel.toJson()
     }
 
     companion object {
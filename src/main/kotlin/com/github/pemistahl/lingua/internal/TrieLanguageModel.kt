@@ -0,0 +1,161 @@
+/*
+ * Copyright © 2018-today Peter M. Stahl pemistahl@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either expressed or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pemistahl.lingua.internal
+
+import it.unimi.dsi.fastutil.longs.Long2FloatMap
+import it.unimi.dsi.fastutil.longs.Long2FloatMaps
+import it.unimi.dsi.fastutil.longs.Long2FloatOpenHashMap
+import java.util.Arrays
+
+/**
+ * Read-only language model of a single language which holds the ngrams of all five orders
+ * in one prefix trie, so that backing off from an ngram to its lower-order prefixes
+ * is a single walk along its characters instead of one lookup per order.
+ *
+ * The nodes are stored level by level in parallel arrays. The children of a node are
+ * contiguous and sorted by their character, so they are found with a binary search.
+ * Node 0 is the root. Fivegrams which [PackedNgram] packs into a hash can not be
+ * restored to their characters and are kept in a separate map instead.
+ */
+internal class TrieLanguageModel private constructor(
+    private val chars: CharArray,
+    private val logProbabilities: FloatArray,
+    private val firstChildren: IntArray,
+    private val hashedFivegrams: Long2FloatMap
+) : MemoryFootprint {
+    /** The number of ngrams of all orders in this model. */
+    val size: Int = logProbabilities.count { it != Float.NEGATIVE_INFINITY } + hashedFivegrams.size
+
+    override val sizeInBytes: Long
+        get() = chars.size.toLong() * Char.SIZE_BYTES + logProbabilities.size.toLong() * Float.SIZE_BYTES +
+            firstChildren.size.toLong() * Int.SIZE_BYTES +
+            MemoryFootprint.ofOpenHashMap(hashedFivegrams.size, Long.SIZE_BYTES, Float.SIZE_BYTES)
+
+    /**
+     * Returns the log-probability of the longest prefix of the given ngram which this
+     * model contains or [Float.NEGATIVE_INFINITY] if it does not contain any of them.
+     *
+     * @param packedNgram The key of [ngram] itself, as returned by [PackedNgram.pack].
+     */
+    fun getLongestPrefixLogProbability(ngram: CharSequence, packedNgram: Long): Float {
+        if (ngram.length == 5 && packedNgram < 0) {
+            val logProbability = hashedFivegrams.get(packedNgram)
+            if (logProbability != Float.NEGATIVE_INFINITY) {
+                return logProbability
+            }
+        }
+        var logProbability = Float.NEGATIVE_INFINITY
+        var node = ROOT
+        for (i in 0 until ngram.length) {
+            node = findChild(node, ngram[i])
+            if (node < 0) break
+            if (logProbabilities[node] != Float.NEGATIVE_INFINITY) {
+                logProbability = logProbabilities[node]
+            }
+        }
+        return logProbability
+    }
+
+    /**
+     * Returns the log-probability of the given packed ngram or
+     * [Float.NEGATIVE_INFINITY] if the model does not contain it.
+     */
+    fun getLogProbability(ngram: Long, ngramLength: Int): Float {
+        if (ngramLength == 5 && ngram < 0) {
+            return hashedFivegrams.get(ngram)
+        }
+        val chars = PackedNgram.unpack(ngram, ngramLength)
+        var node = ROOT
+        for (char in chars) {
+            node = findChild(node, char)
+            if (node < 0) return Float.NEGATIVE_INFINITY
+        }
+        return logProbabilities[node]
+    }
+
+    private fun findChild(node: Int, char: Char): Int {
+        val firstChild = firstChildren[node]
+        val lastChild = firstChildren[node + 1]
+        val child = Arrays.binarySearch(chars, firstChild, lastChild, char)
+        return if (child >= 0) child else -1
+    }
+
+    companion object {
+        private const val ROOT = 0
+
+        /**
+         * Builds the trie from the log-probabilities of all orders of a single language,
+         * where the map at index `i` holds the ngrams of length `i + 1`.
+         */
+        fun fromLogProbabilities(logProbabilitiesByOrder: List<Long2FloatMap>): TrieLanguageModel {
+            require(logProbabilitiesByOrder.size == 5) { "trie needs the language models of all five orders" }
+
+            val hashedFivegrams = Long2FloatOpenHashMap()
+            hashedFivegrams.defaultReturnValue(Float.NEGATIVE_INFINITY)
+
+            val ngramsByLength = List(5) { hashMapOf<String, Float>() }
+            for ((index, logProbabilities) in logProbabilitiesByOrder.withIndex()) {
+                val ngramLength = index + 1
+                for (entry in Long2FloatMaps.fastIterable(logProbabilities)) {
+                    if (ngramLength == 5 && entry.longKey < 0) {
+                        hashedFivegrams.put(entry.longKey, entry.floatValue)
+                        continue
+                    }
+                    val ngram = PackedNgram.unpack(entry.longKey, ngramLength)
+                    ngramsByLength[index][ngram] = entry.floatValue
+                    for (prefixLength in 1 until ngramLength) {
+                        ngramsByLength[prefixLength - 1].putIfAbsent(
+                            ngram.substring(0, prefixLength),
+                            Float.NEGATIVE_INFINITY
+                        )
+                    }
+                }
+            }
+
+            val levels = ngramsByLength.map { it.keys.sorted() }
+            val nodeCount = 1 + levels.sumOf { it.size }
+            val chars = CharArray(nodeCount)
+            val logProbabilities = FloatArray(nodeCount)
+            val firstChildren = IntArray(nodeCount + 1)
+
+            logProbabilities[ROOT] = Float.NEGATIVE_INFINITY
+            firstChildren[ROOT] = 1
+
+            var levelStart = 1
+            for ((index, level) in levels.withIndex()) {
+                val nextLevelStart = levelStart + level.size
+                val nextLevel = levels.getOrElse(index + 1) { emptyList() }
+                var child = 0
+
+                for ((offset, ngram) in level.withIndex()) {
+                    val node = levelStart + offset
+                    chars[node] = ngram.last()
+                    logProbabilities[node] = ngramsByLength[index].getValue(ngram)
+                    firstChildren[node] = nextLevelStart + child
+                    while (child < nextLevel.size && nextLevel[child].startsWith(ngram)) {
+                        child++
+                    }
+                }
+                levelStart = nextLevelStart
+            }
+            firstChildren[nodeCount] = nodeCount
+
+            hashedFivegrams.trim()
+            return TrieLanguageModel(chars, logProbabilities, firstChildren, hashedFivegrams)
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright © 2018-today Peter M. Stahl pemistahl@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either expressed or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pemistahl.lingua.internal
+
+import java.lang.ref.ReferenceQueue
+import java.lang.ref.WeakReference
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Concurrent map which holds its values weakly, so that a value is only kept
+ * as long as it is strongly referenced from elsewhere.
+ *
+ * Detectors share the registries of their language models through such maps, keyed by
+ * the options the registries are created for. Each detector references its registries
+ * itself, so they are shared for as long as any detector uses them. Once the last of these
+ * detectors has been garbage collected, the registries are collected as well and their
+ * entry is removed the next time the map is accessed.
+ */
+internal class WeakValueMap<K : Any, V : Any> {
+    private val entries = ConcurrentHashMap<K, KeyedReference<K, V>>()
+    private val collectedValues = ReferenceQueue<V>()
+
+    operator fun get(key: K): V? = entries[key]?.get()
+
+    /** Returns the value of the given key, creating it with [create] if it is absent or has been collected. */
+    fun computeIfAbsent(key: K, create: (K) -> V): V {
+        removeCollectedEntries()
+        var value: V? = null
+        entries.compute(key) { _, reference ->
+            value = reference?.get()
+            if (value != null) reference else KeyedReference(key, create(key).also { value = it }, collectedValues)
+        }
+        return value!!
+    }
+
+    private fun removeCollectedEntries() {
+        while (true) {
+            @Suppress("UNCHECKED_CAST")
+            val reference = collectedValues.poll() as KeyedReference<K, V>? ?: return
+            entries.remove(reference.key, reference)
+        }
+    }
+
+    private class KeyedReference<K, V>(
+        val key: K,
+        value: V,
+        queue: ReferenceQueue<V>
+    ) : WeakReference<V>(value, queue)
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright © 2018-today Peter M. Stahl pemistahl@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either expressed or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pemistahl.lingua.internal.io
+
+import com.github.pemistahl.lingua.internal.Alphabet
+import com.github.pemistahl.lingua.internal.BinaryLanguageModel
+import com.github.pemistahl.lingua.internal.Ngram
+import com.github.pemistahl.lingua.internal.TrainingDataLanguageModel
+import it.unimi.dsi.fastutil.objects.Object2FloatMaps
+import it.unimi.dsi.fastutil.objects.Object2FloatOpenHashMap
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.Paths
+import java.util.EnumMap
+import kotlin.streams.toList
+
+/**
+ * Converts the JSON language models below the directory given as first argument
+ * into their binary representation and writes them below the directory given
+ * as second argument, preserving the `<iso code>/<ngram name>s` layout.
+ *
+ * Each language model is split into one file per [Alphabet] named
+ * `<ngram name>s.<alphabet>.<extension>`, so that only the partitions of the
+ * scripts a detector needs have to be loaded. Ngrams whose characters belong to
+ * several alphabets or to none of them go into the partition of [Alphabet.NONE].
+ *
+ * This is run by the Gradle task `writeBinaryLanguageModels` during the build.
+ */
+fun main(args: Array<String>) {
+    require(args.size == 2) { "Usage: BinaryLanguageModelConverter <input directory> <output directory>" }
+
+    val inputDirectoryPath = Paths.get(args[0]).toAbsolutePath()
+    val outputDirectoryPath = Paths.get(args[1]).toAbsolutePath()
+    val languageDirectoryPaths = Files.list(inputDirectoryPath).use { paths ->
+        paths.filter { Files.isDirectory(it) }.toList()
+    }
+
+    languageDirectoryPaths.parallelStream().forEach { languageDirectoryPath ->
+        for (ngramLength in 1..5) {
+            convertLanguageModel(
+                languageDirectoryPath,
+                outputDirectoryPath.resolve(languageDirectoryPath.fileName.toString()),
+                ngramLength
+            )
+        }
+    }
+}
+
+private fun convertLanguageModel(inputDirectoryPath: Path, outputDirectoryPath: Path, ngramLength: Int) {
+    val ngramName = Ngram.getNgramNameByLength(ngramLength)
+    val jsonFilePath = inputDirectoryPath.resolve("${ngramName}s.json")
+
+    if (!Files.isRegularFile(jsonFilePath)) return
+
+    val frequencies = Files.newInputStream(jsonFilePath).use(TrainingDataLanguageModel::fromJson)
+    val partitions = EnumMap<Alphabet, Object2FloatOpenHashMap<String>>(Alphabet::class.java)
+    for (entry in Object2FloatMaps.fastIterable(frequencies)) {
+        partitions.getOrPut(Alphabet.of(entry.key)) { Object2FloatOpenHashMap() }.put(entry.key, entry.floatValue)
+    }
+
+    Files.createDirectories(outputDirectoryPath)
+    for ((alphabet, partition) in partitions) {
+        val binaryFilePath = outputDirectoryPath.resolve(BinaryLanguageModel.fileNameOf(ngramLength, alphabet))
+        Files.newOutputStream(binaryFilePath).use { BinaryLanguageModel.toBinary(partition, ngramLength, it) }
+    }
+}
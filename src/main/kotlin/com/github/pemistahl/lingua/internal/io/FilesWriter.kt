@@ -36,6 +36,18 @@ abstract class FilesWriter {
         }
     }
 
+    protected fun checkInputDirectoryPath(inputDirectoryPath: Path) {
+        if (!inputDirectoryPath.isAbsolute()) {
+            throw IllegalArgumentException("Input directory path '$inputDirectoryPath' is not absolute")
+        }
+        if (!Files.exists(inputDirectoryPath)) {
+            throw NotDirectoryException("Input directory '$inputDirectoryPath' does not exist")
+        }
+        if (!Files.isDirectory(inputDirectoryPath)) {
+            throw NotDirectoryException("Input directory path '$inputDirectoryPath' does not represent a directory")
+        }
+    }
+
     protected fun checkOutputDirectoryPath(outputDirectoryPath: Path) {
         if (!outputDirectoryPath.isAbsolute()) {
             throw IllegalArgumentException("Output directory path '$outputDirectoryPath' is not absolute")
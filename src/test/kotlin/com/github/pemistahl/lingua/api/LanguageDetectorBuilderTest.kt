@@ -16,17 +16,43 @@
 
 package com.github.pemistahl.lingua.api
 
+import com.github.pemistahl.lingua.api.Language.BOKMAL
+import com.github.pemistahl.lingua.api.Language.DANISH
 import com.github.pemistahl.lingua.api.Language.ENGLISH
 import com.github.pemistahl.lingua.api.Language.GERMAN
+import com.github.pemistahl.lingua.api.Language.NYNORSK
 import com.github.pemistahl.lingua.api.Language.SWEDISH
 import org.assertj.core.api.Assertions.assertThat
 import org.assertj.core.api.Assertions.assertThatIllegalArgumentException
+import org.assertj.core.api.Assertions.assertThatIllegalStateException
 import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+import org.junit.jupiter.params.ParameterizedTest
+import org.junit.jupiter.params.provider.Arguments.arguments
+import org.junit.jupiter.params.provider.MethodSource
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.Paths
 
 class LanguageDetectorBuilderTest {
 
     private val minimumLanguagesErrorMessage = "LanguageDetector needs at least 2 languages to choose from"
 
+    private val storageModes = mapOf<String, (LanguageDetectorBuilder) -> LanguageDetectorBuilder>(
+        "withMemoryMappedLanguageModels" to { it.withMemoryMappedLanguageModels(Paths.get("mapped")) },
+        "withQuantizedLanguageModels" to { it.withQuantizedLanguageModels() },
+        "withFusedLanguageModels" to { it.withFusedLanguageModels() },
+        "withPrefixTrieLanguageModels" to { it.withPrefixTrieLanguageModels() },
+        "withPerfectHashLanguageModels" to { it.withPerfectHashLanguageModels() },
+        "withSortedArrayLanguageModels" to { it.withSortedArrayLanguageModels() },
+        "withLanguageModelsFromDirectory" to { it.withLanguageModelsFromDirectory(Paths.get("models")) },
+        "withTieredLanguageModels" to { it.withTieredLanguageModels(Paths.get("tiered"), hotNgramCount = 100) },
+        "withScriptPartitionedLanguageModels" to { it.withScriptPartitionedLanguageModels() },
+        "withClusteredLanguageModels" to { it.withClusteredLanguageModels() },
+        "withFeatureHashedLanguageModels" to { it.withFeatureHashedLanguageModels(bucketCount = 1 shl 16) },
+        "withLanguageModelMemoryBudget" to { it.withLanguageModelMemoryBudget(64L * 1024 * 1024) }
+    )
+
     @Test
     fun `assert that LanguageDetector can be built from all languages`() {
         val builder = LanguageDetectorBuilder.fromAllLanguages()
@@ -295,4 +321,419 @@ class LanguageDetectorBuilderTest {
             )
         )
     }
+
+    @Test
+    fun `assert that LanguageDetector can be built with memory-mapped language models`(@TempDir directoryPath: Path) {
+        val builder = LanguageDetectorBuilder
+            .fromLanguages(ENGLISH, GERMAN)
+            .withMemoryMappedLanguageModels(directoryPath)
+        val expectedLanguages = listOf(ENGLISH, GERMAN)
+
+        assertThat(builder.languages).isEqualTo(expectedLanguages)
+        assertThat(builder.memoryMappedLanguageModelsDirectory).isEqualTo(directoryPath)
+        assertThat(builder.build()).isEqualTo(
+            LanguageDetector(
+                expectedLanguages.toMutableSet(),
+                minimumRelativeDistance = 0.0,
+                isEveryLanguageModelPreloaded = false,
+                isLowAccuracyModeEnabled = false,
+                memoryMappedLanguageModelsDirectory = directoryPath
+            )
+        )
+        assertThat(builder.build().detectLanguageOf("Dies ist ein deutscher Satz.")).isEqualTo(GERMAN)
+        assertThat(Files.isRegularFile(directoryPath.resolve("de/trigrams.mapped"))).isTrue
+    }
+
+    @Test
+    fun `assert that LanguageDetector can be built with quantized language models`() {
+        val builder = LanguageDetectorBuilder
+            .fromLanguages(ENGLISH, GERMAN)
+            .withQuantizedLanguageModels()
+        val expectedLanguages = listOf(ENGLISH, GERMAN)
+
+        assertThat(builder.languages).isEqualTo(expectedLanguages)
+        assertThat(builder.isLanguageModelQuantizationEnabled).isTrue
+        assertThat(builder.build()).isEqualTo(
+            LanguageDetector(
+                expectedLanguages.toMutableSet(),
+                minimumRelativeDistance = 0.0,
+                isEveryLanguageModelPreloaded = false,
+                isLowAccuracyModeEnabled = false,
+                isLanguageModelQuantizationEnabled = true
+            )
+        )
+        assertThat(builder.build().detectLanguageOf("Dies ist ein deutscher Satz.")).isEqualTo(GERMAN)
+    }
+
+    @Test
+    fun `assert that LanguageDetector can be built with fused language models`() {
+        val builder = LanguageDetectorBuilder
+            .fromLanguages(ENGLISH, GERMAN)
+            .withFusedLanguageModels()
+        val expectedLanguages = listOf(ENGLISH, GERMAN)
+
+        assertThat(builder.languages).isEqualTo(expectedLanguages)
+        assertThat(builder.isLanguageModelFusionEnabled).isTrue
+        assertThat(builder.build()).isEqualTo(
+            LanguageDetector(
+                expectedLanguages.toMutableSet(),
+                minimumRelativeDistance = 0.0,
+                isEveryLanguageModelPreloaded = false,
+                isLowAccuracyModeEnabled = false,
+                isLanguageModelFusionEnabled = true
+            )
+        )
+        assertThat(builder.build().detectLanguageOf("Dies ist ein deutscher Satz.")).isEqualTo(GERMAN)
+        assertThat(builder.build().computeLanguageConfidenceValues("Dies ist ein deutscher Satz.")).isEqualTo(
+            LanguageDetectorBuilder.fromLanguages(ENGLISH, GERMAN).build()
+                .computeLanguageConfidenceValues("Dies ist ein deutscher Satz.")
+        )
+    }
+
+    @Test
+    fun `assert that LanguageDetector can be built with prefix trie language models`() {
+        val builder = LanguageDetectorBuilder
+            .fromLanguages(ENGLISH, GERMAN)
+            .withPrefixTrieLanguageModels()
+        val expectedLanguages = listOf(ENGLISH, GERMAN)
+
+        assertThat(builder.languages).isEqualTo(expectedLanguages)
+        assertThat(builder.isPrefixTrieEnabled).isTrue
+        assertThat(builder.build()).isEqualTo(
+            LanguageDetector(
+                expectedLanguages.toMutableSet(),
+                minimumRelativeDistance = 0.0,
+                isEveryLanguageModelPreloaded = false,
+                isLowAccuracyModeEnabled = false,
+                isPrefixTrieEnabled = true
+            )
+        )
+        assertThat(builder.build().detectLanguageOf("Dies ist ein deutscher Satz.")).isEqualTo(GERMAN)
+        assertThat(builder.build().computeLanguageConfidenceValues("Dies ist ein deutscher Satz.")).isEqualTo(
+            LanguageDetectorBuilder.fromLanguages(ENGLISH, GERMAN).build()
+                .computeLanguageConfidenceValues("Dies ist ein deutscher Satz.")
+        )
+    }
+
+    @Test
+    fun `assert that LanguageDetector can be built with perfect hash language models`() {
+        val builder = LanguageDetectorBuilder
+            .fromLanguages(ENGLISH, GERMAN)
+            .withPerfectHashLanguageModels()
+        val expectedLanguages = listOf(ENGLISH, GERMAN)
+
+        assertThat(builder.languages).isEqualTo(expectedLanguages)
+        assertThat(builder.isPerfectHashingEnabled).isTrue
+        assertThat(builder.build()).isEqualTo(
+            LanguageDetector(
+                expectedLanguages.toMutableSet(),
+                minimumRelativeDistance = 0.0,
+                isEveryLanguageModelPreloaded = false,
+                isLowAccuracyModeEnabled = false,
+                isPerfectHashingEnabled = true
+            )
+        )
+        assertThat(builder.build().detectLanguageOf("Dies ist ein deutscher Satz.")).isEqualTo(GERMAN)
+    }
+
+    @Test
+    fun `assert that LanguageDetector can be built with bloom filters`() {
+        val builder = LanguageDetectorBuilder
+            .fromLanguages(ENGLISH, GERMAN)
+            .withBloomFilters(0.001)
+        val expectedLanguages = listOf(ENGLISH, GERMAN)
+
+        assertThat(builder.languages).isEqualTo(expectedLanguages)
+        assertThat(builder.bloomFilterFalsePositiveRate).isEqualTo(0.001)
+        assertThat(builder.build()).isEqualTo(
+            LanguageDetector(
+                expectedLanguages.toMutableSet(),
+                minimumRelativeDistance = 0.0,
+                isEveryLanguageModelPreloaded = false,
+                isLowAccuracyModeEnabled = false,
+                bloomFilterFalsePositiveRate = 0.001
+            )
+        )
+        assertThat(builder.build().computeLanguageConfidenceValues("Dies ist ein deutscher Satz.")).isEqualTo(
+            LanguageDetectorBuilder.fromLanguages(ENGLISH, GERMAN).build()
+                .computeLanguageConfidenceValues("Dies ist ein deutscher Satz.")
+        )
+    }
+
+    @Test
+    fun `assert that bloom filters can not be built with invalid false-positive rate`() {
+        assertThatIllegalArgumentException().isThrownBy {
+            LanguageDetectorBuilder.fromLanguages(ENGLISH, GERMAN).withBloomFilters(1.0)
+        }.withMessage("false-positive rate must lie in between 0.0 and 1.0 exclusively")
+    }
+
+    @Test
+    fun `assert that LanguageDetector can be built with sorted array language models`() {
+        val builder = LanguageDetectorBuilder
+            .fromLanguages(ENGLISH, GERMAN)
+            .withSortedArrayLanguageModels()
+        val expectedLanguages = listOf(ENGLISH, GERMAN)
+
+        assertThat(builder.languages).isEqualTo(expectedLanguages)
+        assertThat(builder.isSortedArrayLayoutEnabled).isTrue
+        assertThat(builder.build()).isEqualTo(
+            LanguageDetector(
+                expectedLanguages.toMutableSet(),
+                minimumRelativeDistance = 0.0,
+                isEveryLanguageModelPreloaded = false,
+                isLowAccuracyModeEnabled = false,
+                isSortedArrayLayoutEnabled = true
+            )
+        )
+        assertThat(builder.build().detectLanguageOf("Dies ist ein deutscher Satz.")).isEqualTo(GERMAN)
+    }
+
+    @Test
+    fun `assert that LanguageDetector can be built with language models from a directory`(
+        @TempDir directoryPath: Path
+    ) {
+        Files.createDirectory(directoryPath.resolve("en"))
+        Files.writeString(
+            directoryPath.resolve("en").resolve("unigrams.json"),
+            """{"language":"ENGLISH","ngrams":{"1/2":"a b"}}"""
+        )
+        Files.createDirectory(directoryPath.resolve("de"))
+        Files.writeString(
+            directoryPath.resolve("de").resolve("unigrams.json"),
+            """{"language":"GERMAN","ngrams":{"1/2":"c d"}}"""
+        )
+        val builder = LanguageDetectorBuilder
+            .fromLanguages(ENGLISH, GERMAN)
+            .withLanguageModelsFromDirectory(directoryPath)
+        val expectedLanguages = listOf(ENGLISH, GERMAN)
+
+        assertThat(builder.languages).isEqualTo(expectedLanguages)
+        assertThat(builder.languageModelsDirectory).isEqualTo(directoryPath)
+        assertThat(builder.build()).isEqualTo(
+            LanguageDetector(
+                expectedLanguages.toMutableSet(),
+                minimumRelativeDistance = 0.0,
+                isEveryLanguageModelPreloaded = false,
+                isLowAccuracyModeEnabled = false,
+                languageModelsDirectory = directoryPath
+            )
+        )
+        assertThat(builder.build().detectLanguageOf("abba")).isEqualTo(ENGLISH)
+        assertThat(builder.build().detectLanguageOf("dccd")).isEqualTo(GERMAN)
+
+        val detectorWithBloomFilters = builder.withBloomFilters(0.01).build()
+
+        assertThat(detectorWithBloomFilters.bloomFilterFalsePositiveRate).isEqualTo(0.01)
+        assertThat(detectorWithBloomFilters.detectLanguageOf("abba")).isEqualTo(ENGLISH)
+        assertThat(detectorWithBloomFilters.detectLanguageOf("dccd")).isEqualTo(GERMAN)
+    }
+
+    @Test
+    fun `assert that LanguageDetector can be built with tiered language models`(@TempDir directoryPath: Path) {
+        val builder = LanguageDetectorBuilder
+            .fromLanguages(ENGLISH, GERMAN)
+            .withTieredLanguageModels(directoryPath, hotNgramCount = 100)
+        val expectedLanguages = listOf(ENGLISH, GERMAN)
+
+        assertThat(builder.languages).isEqualTo(expectedLanguages)
+        assertThat(builder.tieredLanguageModelsDirectory).isEqualTo(directoryPath)
+        assertThat(builder.hotNgramCount).isEqualTo(100)
+
+        val detector = builder.build()
+        val expectedDetector = LanguageDetector(
+            expectedLanguages.toMutableSet(),
+            minimumRelativeDistance = 0.0,
+            isEveryLanguageModelPreloaded = false,
+            isLowAccuracyModeEnabled = false,
+            tieredLanguageModelsDirectory = directoryPath,
+            hotNgramCount = 100
+        )
+        assertThat(detector).isEqualTo(expectedDetector)
+        // the expected detector shares the cold language models, so it must not keep them loaded
+        expectedDetector.unloadLanguageModels()
+
+        val text = "Dies ist ein deutscher Satz."
+        val confidenceValues = detector.computeLanguageConfidenceValues(text)
+        detector.recordNgramUsage("Das ist noch ein Satz.")
+        detector.updateHotNgrams()
+
+        assertThat(detector.computeLanguageConfidenceValues(text)).isEqualTo(confidenceValues)
+        assertThat(detector.detectLanguageOf(text)).isEqualTo(GERMAN)
+
+        detector.unloadLanguageModels()
+
+        assertThat(detector.countLoadedLanguageModels()).isZero
+        assertThat(LanguageDetector.mappedLanguageModelsOf(directoryPath).all { it.isEmpty() }).isTrue
+    }
+
+    @Test
+    fun `assert that hot ngram count must be greater than zero`(@TempDir directoryPath: Path) {
+        assertThatIllegalArgumentException().isThrownBy {
+            LanguageDetectorBuilder.fromLanguages(ENGLISH, GERMAN).withTieredLanguageModels(directoryPath, 0)
+        }.withMessage("hot ngram count must be greater than 0")
+    }
+
+    @Test
+    fun `assert that LanguageDetector can be built with feature-hashed language models`() {
+        val builder = LanguageDetectorBuilder
+            .fromLanguages(ENGLISH, GERMAN)
+            .withFeatureHashedLanguageModels(bucketCount = 1 shl 16)
+        val expectedLanguages = listOf(ENGLISH, GERMAN)
+
+        assertThat(builder.languages).isEqualTo(expectedLanguages)
+        assertThat(builder.featureHashingBucketCount).isEqualTo(1 shl 16)
+        assertThat(builder.build()).isEqualTo(
+            LanguageDetector(
+                expectedLanguages.toMutableSet(),
+                minimumRelativeDistance = 0.0,
+                isEveryLanguageModelPreloaded = false,
+                isLowAccuracyModeEnabled = false,
+                featureHashingBucketCount = 1 shl 16
+            )
+        )
+        assertThat(builder.build().detectLanguageOf("Dies ist ein deutscher Satz.")).isEqualTo(GERMAN)
+    }
+
+    @Test
+    fun `assert that bucket count must be greater than zero`() {
+        assertThatIllegalArgumentException().isThrownBy {
+            LanguageDetectorBuilder.fromLanguages(ENGLISH, GERMAN).withFeatureHashedLanguageModels(0)
+        }.withMessage("bucket count must be greater than 0")
+    }
+
+    @Test
+    fun `assert that LanguageDetector can be built with script-partitioned language models`() {
+        val builder = LanguageDetectorBuilder
+            .fromLanguages(ENGLISH, GERMAN)
+            .withScriptPartitionedLanguageModels()
+        val expectedLanguages = listOf(ENGLISH, GERMAN)
+
+        assertThat(builder.languages).isEqualTo(expectedLanguages)
+        assertThat(builder.isScriptPartitioningEnabled).isTrue
+        assertThat(builder.build()).isEqualTo(
+            LanguageDetector(
+                expectedLanguages.toMutableSet(),
+                minimumRelativeDistance = 0.0,
+                isEveryLanguageModelPreloaded = false,
+                isLowAccuracyModeEnabled = false,
+                isScriptPartitioningEnabled = true
+            )
+        )
+        assertThat(builder.build().detectLanguageOf("Dies ist ein deutscher Satz.")).isEqualTo(GERMAN)
+    }
+
+    @Test
+    fun `assert that LanguageDetector can be built with clustered language models`() {
+        val builder = LanguageDetectorBuilder
+            .fromLanguages(BOKMAL, NYNORSK, DANISH, GERMAN)
+            .withClusteredLanguageModels()
+        val expectedLanguages = listOf(BOKMAL, NYNORSK, DANISH, GERMAN)
+
+        assertThat(builder.languages).isEqualTo(expectedLanguages)
+        assertThat(builder.isLanguageModelClusteringEnabled).isTrue
+        assertThat(builder.build()).isEqualTo(
+            LanguageDetector(
+                expectedLanguages.toMutableSet(),
+                minimumRelativeDistance = 0.0,
+                isEveryLanguageModelPreloaded = false,
+                isLowAccuracyModeEnabled = false,
+                isLanguageModelClusteringEnabled = true
+            )
+        )
+
+        val text = "Dette er en setning på dansk."
+        assertThat(builder.build().computeLanguageConfidenceValues(text)).isEqualTo(
+            LanguageDetectorBuilder.fromLanguages(BOKMAL, NYNORSK, DANISH, GERMAN).build()
+                .computeLanguageConfidenceValues(text)
+        )
+    }
+
+    @Test
+    fun `assert that LanguageDetector can be built with a language model memory budget`() {
+        val builder = LanguageDetectorBuilder
+            .fromLanguages(ENGLISH, GERMAN)
+            .withLanguageModelMemoryBudget(64L * 1024 * 1024)
+        val expectedLanguages = listOf(ENGLISH, GERMAN)
+
+        assertThat(builder.languages).isEqualTo(expectedLanguages)
+        assertThat(builder.languageModelMemoryBudget).isEqualTo(64L * 1024 * 1024)
+        assertThat(builder.build()).isEqualTo(
+            LanguageDetector(
+                expectedLanguages.toMutableSet(),
+                minimumRelativeDistance = 0.0,
+                isEveryLanguageModelPreloaded = false,
+                isLowAccuracyModeEnabled = false,
+                languageModelMemoryBudget = 64L * 1024 * 1024
+            )
+        )
+
+        val detector = builder.build()
+
+        assertThat(detector.detectLanguageOf("Dies ist ein deutscher Satz.")).isEqualTo(GERMAN)
+
+        val statistics = detector.getLanguageModelCacheStatistics()
+
+        assertThat(statistics).isNotNull
+        assertThat(statistics?.missCount).isPositive
+        assertThat(statistics?.sizeInBytes).isBetween(1L, 64L * 1024 * 1024)
+        assertThat(LanguageDetectorBuilder.fromLanguages(ENGLISH, GERMAN).build().getLanguageModelCacheStatistics())
+            .isNull()
+    }
+
+    @Test
+    fun `assert that language model memory budget must be greater than zero`() {
+        assertThatIllegalArgumentException().isThrownBy {
+            LanguageDetectorBuilder.fromLanguages(ENGLISH, GERMAN).withLanguageModelMemoryBudget(0)
+        }.withMessage("memory budget must be greater than 0")
+    }
+
+    @Test
+    fun `assert that LanguageDetector can be built with cascade mode`() {
+        val builder = LanguageDetectorBuilder
+            .fromLanguages(ENGLISH, GERMAN)
+            .withCascadeMode(0.2)
+        val expectedLanguages = listOf(ENGLISH, GERMAN)
+
+        assertThat(builder.languages).isEqualTo(expectedLanguages)
+        assertThat(builder.cascadeConfidenceMargin).isEqualTo(0.2)
+        assertThat(builder.build()).isEqualTo(
+            LanguageDetector(
+                expectedLanguages.toMutableSet(),
+                minimumRelativeDistance = 0.0,
+                isEveryLanguageModelPreloaded = false,
+                isLowAccuracyModeEnabled = false,
+                cascadeConfidenceMargin = 0.2
+            )
+        )
+        assertThat(builder.build().detectLanguageOf("Dies ist ein deutscher Satz.")).isEqualTo(GERMAN)
+        assertThat(builder.build().detectLanguageOf("languages are awesome")).isEqualTo(ENGLISH)
+        assertThat(LanguageDetectorBuilder.fromLanguages(ENGLISH, GERMAN).withCascadeMode().cascadeConfidenceMargin)
+            .isEqualTo(0.1)
+    }
+
+    @Test
+    fun `assert that cascade mode can not be enabled with invalid confidence margin`() {
+        assertThatIllegalArgumentException().isThrownBy {
+            LanguageDetectorBuilder.fromLanguages(ENGLISH, GERMAN).withCascadeMode(1.0)
+        }.withMessage("confidence margin must lie in between 0.0 and 1.0 exclusively")
+    }
+
+    @ParameterizedTest
+    @MethodSource("conflictingStorageModesProvider")
+    fun `assert that LanguageDetector can not be built with conflicting storage modes`(
+        firstStorageMode: String,
+        secondStorageMode: String
+    ) {
+        val builder = LanguageDetectorBuilder.fromLanguages(ENGLISH, GERMAN)
+        storageModes.getValue(secondStorageMode)(builder)
+        storageModes.getValue(firstStorageMode)(builder)
+
+        assertThatIllegalStateException().isThrownBy {
+            builder.build()
+        }.withMessage("$firstStorageMode() can not be combined with $secondStorageMode()")
+    }
+
+    private fun conflictingStorageModesProvider() = storageModes.keys.toList().let { names ->
+        names.indices.flatMap { i -> (i + 1 until names.size).map { j -> arguments(names[i], names[j]) } }
+    }
 }
@@ -78,6 +78,7 @@ import com.github.pemistahl.lingua.api.Language.WELSH
 import com.github.pemistahl.lingua.api.Language.XHOSA
 import com.github.pemistahl.lingua.api.Language.YORUBA
 import com.github.pemistahl.lingua.api.Language.ZULU
+import com.github.pemistahl.lingua.internal.HashLanguageModel
 import com.github.pemistahl.lingua.internal.Ngram
 import com.github.pemistahl.lingua.internal.TestDataLanguageModel
 import io.mockk.every
@@ -87,6 +88,7 @@ import it.unimi.dsi.fastutil.objects.Object2FloatOpenHashMap
 import org.assertj.core.api.Assertions.assertThat
 import org.assertj.core.api.Assertions.assertThatIllegalArgumentException
 import org.assertj.core.api.Assertions.within
+import org.junit.jupiter.api.AfterAll
 import org.junit.jupiter.api.BeforeAll
 import org.junit.jupiter.api.Test
 import org.junit.jupiter.api.extension.ExtendWith
@@ -95,6 +97,8 @@ import org.junit.jupiter.params.provider.Arguments.arguments
 import org.junit.jupiter.params.provider.CsvSource
 import org.junit.jupiter.params.provider.MethodSource
 import org.junit.jupiter.params.provider.ValueSource
+import java.lang.ref.Reference
+import java.util.concurrent.ConcurrentHashMap
 import kotlin.math.ln
 
 @ExtendWith(MockKExtension::class)
@@ -220,6 +224,18 @@ class LanguageDetectorTest {
         putAll(mapOf("alter" to 0.3F))
     }
 
+    // summed up log-probabilities of the unigrams, bigrams and trigrams of "alter"
+
+    private val lowerOrderProbabilityForEnglish =
+        ln(0.01F) + ln(0.02F) + ln(0.03F) + ln(0.04F) + ln(0.05F) +
+            ln(0.11F) + ln(0.12F) + ln(0.13F) + ln(0.14F) +
+            ln(0.19F) + ln(0.2F) + ln(0.21F)
+
+    private val lowerOrderProbabilityForGerman =
+        ln(0.06F) + ln(0.07F) + ln(0.08F) + ln(0.09F) + ln(0.1F) +
+            ln(0.15F) + ln(0.16F) + ln(0.17F) + ln(0.18F) +
+            ln(0.22F) + ln(0.23F) + ln(0.24F)
+
     // language model mocks for test data
 
     @MockK
@@ -229,26 +245,45 @@ class LanguageDetectorTest {
     @MockK
     private lateinit var quadrigramTestDataLanguageModel: TestDataLanguageModel
 
-    private var detectorForEnglishAndGerman = LanguageDetector(
-        languages = mutableSetOf(ENGLISH, GERMAN),
+    private var detectorForEnglishAndGerman = createDetectorForEnglishAndGerman()
+
+    private val detectorForAllLanguages = LanguageDetector(
+        languages = Language.all().toMutableSet(),
         minimumRelativeDistance = 0.0,
         isEveryLanguageModelPreloaded = false,
         isLowAccuracyModeEnabled = false
     )
 
-    private val detectorForAllLanguages = LanguageDetector(
-        languages = Language.all().toMutableSet(),
+    private fun createDetectorForEnglishAndGerman(
+        isLanguageModelClusteringEnabled: Boolean = false,
+        cascadeConfidenceMargin: Double? = null
+    ) = LanguageDetector(
+        languages = mutableSetOf(ENGLISH, GERMAN),
         minimumRelativeDistance = 0.0,
         isEveryLanguageModelPreloaded = false,
-        isLowAccuracyModeEnabled = false
+        isLowAccuracyModeEnabled = false,
+        isLanguageModelClusteringEnabled = isLanguageModelClusteringEnabled,
+        cascadeConfidenceMargin = cascadeConfidenceMargin
     )
 
+    /**
+     * Keeps the given detector reachable up to this point. A detector may be garbage collected
+     * right after its last use, which returns its leases and frees the language models asserted on.
+     */
+    private fun keepReachable(detector: LanguageDetector) = Reference.reachabilityFence(detector)
+
     @BeforeAll
     fun beforeAll() {
         addLanguageModelsToDetector()
         defineBehaviorOfTestDataLanguageModels()
     }
 
+    @AfterAll
+    fun afterAll() {
+        // the made-up language models of this class must not leak into other test classes
+        removeLanguageModelsFromDetector()
+    }
+
     // text preprocessing
 
     @Test
@@ -293,39 +328,39 @@ class LanguageDetectorTest {
     // ngram probability lookup
 
     private fun ngramProbabilityProvider() = listOf(
-        arguments(ENGLISH, "a", 0.01F),
-        arguments(ENGLISH, "lt", 0.12F),
-        arguments(ENGLISH, "ter", 0.21F),
-        arguments(ENGLISH, "alte", 0.25F),
-        arguments(ENGLISH, "alter", 0.29F),
-
-        arguments(GERMAN, "t", 0.08F),
-        arguments(GERMAN, "er", 0.18F),
-        arguments(GERMAN, "alt", 0.22F),
-        arguments(GERMAN, "lter", 0.28F),
-        arguments(GERMAN, "alter", 0.30F)
+        arguments(ENGLISH, "a", ln(0.01F)),
+        arguments(ENGLISH, "lt", ln(0.12F)),
+        arguments(ENGLISH, "ter", ln(0.21F)),
+        arguments(ENGLISH, "alte", ln(0.25F)),
+        arguments(ENGLISH, "alter", ln(0.29F)),
+
+        arguments(GERMAN, "t", ln(0.08F)),
+        arguments(GERMAN, "er", ln(0.18F)),
+        arguments(GERMAN, "alt", ln(0.22F)),
+        arguments(GERMAN, "lter", ln(0.28F)),
+        arguments(GERMAN, "alter", ln(0.30F))
     )
 
     @ParameterizedTest
     @MethodSource("ngramProbabilityProvider")
-    internal fun `assert that ngram probability lookup works correctly`(
+    internal fun `assert that ngram log-probability lookup works correctly`(
         language: Language,
         ngram: Ngram,
-        expectedProbability: Float
+        expectedLogProbability: Float
     ) {
         assertThat(
-            detectorForEnglishAndGerman.lookUpNgramProbability(language, ngram)
+            detectorForEnglishAndGerman.lookUpNgramLogProbability(language, ngram)
         ).`as`(
             "language '$language', ngram '$ngram'"
         ).isEqualTo(
-            expectedProbability
+            expectedLogProbability
         )
     }
 
     @Test
     fun `assert that ngram probability lookup does not work for Zerogram`() {
         assertThatIllegalArgumentException().isThrownBy {
-            detectorForEnglishAndGerman.lookUpNgramProbability(ENGLISH, Ngram(""))
+            detectorForEnglishAndGerman.lookUpNgramLogProbability(ENGLISH, Ngram(""))
         }.withMessage(
             "Zerogram detected"
         )
@@ -357,7 +392,10 @@ class LanguageDetectorTest {
         expectedSumOfProbabilities: Float
     ) {
         assertThat(
-            detectorForEnglishAndGerman.computeSumOfNgramProbabilities(ENGLISH, ngrams)
+            detectorForEnglishAndGerman.computeSumOfNgramProbabilities(
+                ENGLISH,
+                TestDataLanguageModel(ngrams).packedNgrams
+            )
         ).`as`(
             "ngrams $ngrams"
         ).isEqualTo(
@@ -945,6 +983,9 @@ class LanguageDetectorTest {
 
     @Test
     fun `assert that language models can be properly unloaded`() {
+        removeLanguageModelsFromDetector()
+        addLanguageModelsToDetector()
+
         assertThatAllLanguageModelsAreLoaded()
 
         detectorForEnglishAndGerman.unloadLanguageModels()
@@ -956,6 +997,133 @@ class LanguageDetectorTest {
         assertThatAllLanguageModelsAreLoaded()
     }
 
+    @Test
+    fun `assert that language models still used by another detector are not unloaded`() {
+        removeLanguageModelsFromDetector()
+        addLanguageModelsToDetector()
+
+        val firstDetector = createDetectorForEnglishAndGerman()
+        val secondDetector = createDetectorForEnglishAndGerman()
+
+        assertThat(firstDetector.countLoadedLanguageModels()).isEqualTo(10)
+        assertThat(firstDetector.computeLoadedLanguageModelsSizeInBytes()).isPositive
+
+        firstDetector.unloadLanguageModels()
+
+        assertThatAllLanguageModelsAreLoaded()
+        assertThat(secondDetector.countLoadedLanguageModels()).isEqualTo(10)
+
+        secondDetector.unloadLanguageModels()
+
+        assertThatAllLanguageModelsAreUnloaded()
+        assertThat(secondDetector.countLoadedLanguageModels()).isZero
+        assertThat(secondDetector.computeLoadedLanguageModelsSizeInBytes()).isZero
+
+        addLanguageModelsToDetector()
+
+        assertThatAllLanguageModelsAreLoaded()
+    }
+
+    @Test
+    fun `assert that language models of a garbage collected detector are freed`() {
+        removeLanguageModelsFromDetector()
+        addLanguageModelsToDetector()
+
+        val droppedDetector = createDetectorForEnglishAndGerman()
+        val secondDetector = createDetectorForEnglishAndGerman()
+        secondDetector.unloadLanguageModels()
+
+        assertThatAllLanguageModelsAreLoaded()
+
+        // runs the action the cleaner runs once the detector has been garbage collected
+        droppedDetector.leaseRelease!!.clean()
+
+        assertThatAllLanguageModelsAreUnloaded()
+
+        addLanguageModelsToDetector()
+        droppedDetector.leaseRelease!!.clean()
+
+        assertThatAllLanguageModelsAreLoaded()
+    }
+
+    @Test
+    fun `assert that clustered language models take languages outside of any cluster from the default models`() {
+        removeLanguageModelsFromDetector()
+        addLanguageModelsToDetector()
+
+        val clusteredDetector = createDetectorForEnglishAndGerman(isLanguageModelClusteringEnabled = true)
+        val defaultDetector = createDetectorForEnglishAndGerman()
+
+        assertThat(clusteredDetector.computeLanguageConfidenceValues("alter"))
+            .isEqualTo(defaultDetector.computeLanguageConfidenceValues("alter"))
+        assertThat(clusteredDetector.countLoadedLanguageModels()).isEqualTo(10)
+
+        clusteredDetector.unloadLanguageModels()
+        defaultDetector.unloadLanguageModels()
+
+        assertThatAllLanguageModelsAreUnloaded()
+
+        addLanguageModelsToDetector()
+    }
+
+    @Test
+    fun `assert that language models can be preloaded asynchronously`() {
+        removeLanguageModelsFromDetector()
+
+        assertThatAllLanguageModelsAreUnloaded()
+
+        val detector = LanguageDetectorBuilder.fromLanguages(ENGLISH, GERMAN).build()
+        val loadedLanguages = ConcurrentHashMap.newKeySet<Language>()
+
+        detector.preloadLanguageModelsAsync { language -> loadedLanguages.add(language) }.join()
+
+        assertThat(loadedLanguages).containsExactlyInAnyOrder(ENGLISH, GERMAN)
+        assertThatAllLanguageModelsAreLoaded()
+        keepReachable(detector)
+
+        removeLanguageModelsFromDetector()
+        addLanguageModelsToDetector()
+    }
+
+    @Test
+    fun `assert that cascade mode does not look up higher order language models for clearly decided text`() {
+        removeLanguageModelsFromDetector()
+        addLanguageModelsToDetector(ngramLengths = 1..3)
+
+        // the unigrams, bigrams and trigrams alone give English a confidence value of about 0.775
+        val detector = createDetectorForEnglishAndGerman(cascadeConfidenceMargin = 0.2)
+
+        val confidenceValues = detector.computeLanguageConfidenceValues("Alter")
+
+        assertThat(confidenceValues.firstKey()).isEqualTo(GERMAN)
+        assertThat(confidenceValues[ENGLISH]).isCloseTo(
+            (lowerOrderProbabilityForGerman / lowerOrderProbabilityForEnglish).toDouble(),
+            within(0.000001)
+        )
+        assertThat(LanguageDetector.quadrigramLanguageModels.isEmpty()).isTrue
+        assertThat(LanguageDetector.fivegramLanguageModels.isEmpty()).isTrue
+        keepReachable(detector)
+
+        addLanguageModelsToDetector()
+    }
+
+    @Test
+    fun `assert that cascade mode looks up higher order language models for close calls`() {
+        removeLanguageModelsFromDetector()
+        addLanguageModelsToDetector()
+
+        // a confidence value of about 0.775 for English lies within this margin
+        val detector = createDetectorForEnglishAndGerman(cascadeConfidenceMargin = 0.25)
+
+        assertThat(detector.computeLanguageConfidenceValues("Alter"))
+            .isEqualTo(detectorForEnglishAndGerman.computeLanguageConfidenceValues("Alter"))
+        assertThat(detector.computeLanguageConfidenceValues("Alter")[ENGLISH]).isNotCloseTo(
+            (lowerOrderProbabilityForGerman / lowerOrderProbabilityForEnglish).toDouble(),
+            within(0.000001)
+        )
+        keepReachable(detector)
+    }
+
     @Test
     fun `assert that high accuracy mode can be properly disabled`() {
         removeLanguageModelsFromDetector()
@@ -973,6 +1141,7 @@ class LanguageDetectorTest {
         detector.detectLanguageOf("short text")
 
         assertThatOnlyTrigramLanguageModelsAreLoaded()
+        keepReachable(detector)
 
         addLanguageModelsToDetector()
 
@@ -998,44 +1167,57 @@ class LanguageDetectorTest {
     }
 
     private fun assertThatAllLanguageModelsAreUnloaded() {
-        assertThat(LanguageDetector.unigramLanguageModels).isEmpty()
-        assertThat(LanguageDetector.bigramLanguageModels).isEmpty()
-        assertThat(LanguageDetector.trigramLanguageModels).isEmpty()
-        assertThat(LanguageDetector.quadrigramLanguageModels).isEmpty()
-        assertThat(LanguageDetector.fivegramLanguageModels).isEmpty()
+        assertThat(LanguageDetector.unigramLanguageModels.isEmpty()).isTrue
+        assertThat(LanguageDetector.bigramLanguageModels.isEmpty()).isTrue
+        assertThat(LanguageDetector.trigramLanguageModels.isEmpty()).isTrue
+        assertThat(LanguageDetector.quadrigramLanguageModels.isEmpty()).isTrue
+        assertThat(LanguageDetector.fivegramLanguageModels.isEmpty()).isTrue
     }
 
     private fun assertThatAllLanguageModelsAreLoaded() {
-        assertThat(LanguageDetector.unigramLanguageModels).isNotEmpty
-        assertThat(LanguageDetector.bigramLanguageModels).isNotEmpty
-        assertThat(LanguageDetector.trigramLanguageModels).isNotEmpty
-        assertThat(LanguageDetector.quadrigramLanguageModels).isNotEmpty
-        assertThat(LanguageDetector.fivegramLanguageModels).isNotEmpty
+        assertThat(LanguageDetector.unigramLanguageModels.isNotEmpty()).isTrue
+        assertThat(LanguageDetector.bigramLanguageModels.isNotEmpty()).isTrue
+        assertThat(LanguageDetector.trigramLanguageModels.isNotEmpty()).isTrue
+        assertThat(LanguageDetector.quadrigramLanguageModels.isNotEmpty()).isTrue
+        assertThat(LanguageDetector.fivegramLanguageModels.isNotEmpty()).isTrue
     }
 
     private fun assertThatOnlyTrigramLanguageModelsAreLoaded() {
-        assertThat(LanguageDetector.unigramLanguageModels).isEmpty()
-        assertThat(LanguageDetector.bigramLanguageModels).isEmpty()
-        assertThat(LanguageDetector.trigramLanguageModels).isNotEmpty
-        assertThat(LanguageDetector.quadrigramLanguageModels).isEmpty()
-        assertThat(LanguageDetector.fivegramLanguageModels).isEmpty()
+        assertThat(LanguageDetector.unigramLanguageModels.isEmpty()).isTrue
+        assertThat(LanguageDetector.bigramLanguageModels.isEmpty()).isTrue
+        assertThat(LanguageDetector.trigramLanguageModels.isNotEmpty()).isTrue
+        assertThat(LanguageDetector.quadrigramLanguageModels.isEmpty()).isTrue
+        assertThat(LanguageDetector.fivegramLanguageModels.isEmpty()).isTrue
     }
 
-    private fun addLanguageModelsToDetector() {
-        LanguageDetector.unigramLanguageModels[ENGLISH] = unigramLanguageModelForEnglish
-        LanguageDetector.unigramLanguageModels[GERMAN] = unigramLanguageModelForGerman
-
-        LanguageDetector.bigramLanguageModels[ENGLISH] = bigramLanguageModelForEnglish
-        LanguageDetector.bigramLanguageModels[GERMAN] = bigramLanguageModelForGerman
-
-        LanguageDetector.trigramLanguageModels[ENGLISH] = trigramLanguageModelForEnglish
-        LanguageDetector.trigramLanguageModels[GERMAN] = trigramLanguageModelForGerman
-
-        LanguageDetector.quadrigramLanguageModels[ENGLISH] = quadrigramLanguageModelForEnglish
-        LanguageDetector.quadrigramLanguageModels[GERMAN] = quadrigramLanguageModelForGerman
-
-        LanguageDetector.fivegramLanguageModels[ENGLISH] = fivegramLanguageModelForEnglish
-        LanguageDetector.fivegramLanguageModels[GERMAN] = fivegramLanguageModelForGerman
+    private fun addLanguageModelsToDetector(ngramLengths: IntRange = 1..5) {
+        val registries = listOf(
+            LanguageDetector.unigramLanguageModels,
+            LanguageDetector.bigramLanguageModels,
+            LanguageDetector.trigramLanguageModels,
+            LanguageDetector.quadrigramLanguageModels,
+            LanguageDetector.fivegramLanguageModels
+        )
+        val languageModelsForEnglish = listOf(
+            unigramLanguageModelForEnglish,
+            bigramLanguageModelForEnglish,
+            trigramLanguageModelForEnglish,
+            quadrigramLanguageModelForEnglish,
+            fivegramLanguageModelForEnglish
+        )
+        val languageModelsForGerman = listOf(
+            unigramLanguageModelForGerman,
+            bigramLanguageModelForGerman,
+            trigramLanguageModelForGerman,
+            quadrigramLanguageModelForGerman,
+            fivegramLanguageModelForGerman
+        )
+        for (ngramLength in ngramLengths) {
+            registries[ngramLength - 1][ENGLISH] =
+                HashLanguageModel.fromFrequencies(languageModelsForEnglish[ngramLength - 1])
+            registries[ngramLength - 1][GERMAN] =
+                HashLanguageModel.fromFrequencies(languageModelsForGerman[ngramLength - 1])
+        }
     }
 
     private fun removeLanguageModelsFromDetector() {
@@ -1055,6 +1237,7 @@ class LanguageDetectorTest {
                 Ngram("e"),
                 Ngram("r")
             )
+            every { packedNgrams } answers { TestDataLanguageModel(ngrams).packedNgrams }
         }
 
         with(trigramTestDataLanguageModel) {
@@ -1064,6 +1247,7 @@ class LanguageDetectorTest {
                 Ngram("ter"),
                 Ngram("wxy")
             )
+            every { packedNgrams } answers { TestDataLanguageModel(ngrams).packedNgrams }
         }
 
         with(quadrigramTestDataLanguageModel) {
@@ -1072,6 +1256,7 @@ class LanguageDetectorTest {
                 Ngram("lter"),
                 Ngram("wxyz")
             )
+            every { packedNgrams } answers { TestDataLanguageModel(ngrams).packedNgrams }
         }
     }
 }
@@ -0,0 +1,160 @@
+/*
+ * Copyright © 2018-today Peter M. Stahl pemistahl@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either expressed or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pemistahl.lingua.api.io
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.assertThrows
+import org.junit.jupiter.api.condition.DisabledOnOs
+import org.junit.jupiter.api.condition.OS.WINDOWS
+import org.junit.jupiter.api.io.TempDir
+import java.nio.file.Files
+import java.nio.file.NotDirectoryException
+import java.nio.file.Path
+import kotlin.io.path.Path
+
+class LanguageModelFilesPrunerTest {
+
+    private val unigramLanguageModel =
+        """
+        {
+            "language":"ENGLISH",
+            "ngrams":{
+                "1/2":"a",
+                "1/4":"c b",
+                "1/8":"d"
+            }
+        }
+        """.minify()
+
+    private val bigramLanguageModel =
+        """
+        {
+            "language":"ENGLISH",
+            "ngrams":{
+                "1/1":"ab",
+                "1/3":"bc cd"
+            }
+        }
+        """.minify()
+
+    @Test
+    @DisabledOnOs(WINDOWS) // TempDir cannot be deleted on Windows
+    fun `assert that the most probable ngrams per order are kept`(
+        @TempDir inputDirectoryPath: Path,
+        @TempDir outputDirectoryPath: Path
+    ) {
+        writeLanguageModelFiles(inputDirectoryPath)
+
+        val sizeInBytes = LanguageModelFilesPruner.pruneAndWriteLanguageModelFiles(
+            inputDirectoryPath = inputDirectoryPath,
+            outputDirectoryPath = outputDirectoryPath,
+            maximumSizeInBytes = 100,
+            strategy = PruningStrategy.TOP_K_PER_ORDER
+        )
+
+        assertThat(sizeInBytes).isEqualTo(96)
+        assertThat(Files.list(outputDirectoryPath).count()).isEqualTo(2)
+        assertThat(outputDirectoryPath.resolve("unigrams.json").toFile().readText()).isEqualTo(
+            """{"language":"ENGLISH","ngrams":{"1/2":"a","1/4":"b c"}}"""
+        )
+        assertThat(outputDirectoryPath.resolve("bigrams.json").toFile().readText()).isEqualTo(
+            """{"language":"ENGLISH","ngrams":{"1/1":"ab","1/3":"bc cd"}}"""
+        )
+    }
+
+    @Test
+    @DisabledOnOs(WINDOWS) // TempDir cannot be deleted on Windows
+    fun `assert that ngrams above a common minimum frequency are kept`(
+        @TempDir inputDirectoryPath: Path,
+        @TempDir outputDirectoryPath: Path
+    ) {
+        writeLanguageModelFiles(inputDirectoryPath)
+
+        val sizeInBytes = LanguageModelFilesPruner.pruneAndWriteLanguageModelFiles(
+            inputDirectoryPath = inputDirectoryPath,
+            outputDirectoryPath = outputDirectoryPath,
+            maximumSizeInBytes = 50,
+            strategy = PruningStrategy.MINIMUM_FREQUENCY
+        )
+
+        assertThat(sizeInBytes).isEqualTo(48)
+        assertThat(outputDirectoryPath.resolve("unigrams.json").toFile().readText()).isEqualTo(
+            """{"language":"ENGLISH","ngrams":{"1/2":"a"}}"""
+        )
+        assertThat(outputDirectoryPath.resolve("bigrams.json").toFile().readText()).isEqualTo(
+            """{"language":"ENGLISH","ngrams":{"1/1":"ab"}}"""
+        )
+    }
+
+    @Test
+    @DisabledOnOs(WINDOWS) // TempDir cannot be deleted on Windows
+    fun `assert that all ngrams are removed if the memory budget is too small`(
+        @TempDir inputDirectoryPath: Path,
+        @TempDir outputDirectoryPath: Path
+    ) {
+        writeLanguageModelFiles(inputDirectoryPath)
+
+        val sizeInBytes = LanguageModelFilesPruner.pruneAndWriteLanguageModelFiles(
+            inputDirectoryPath = inputDirectoryPath,
+            outputDirectoryPath = outputDirectoryPath,
+            maximumSizeInBytes = 10
+        )
+
+        assertThat(sizeInBytes).isEqualTo(0)
+        assertThat(outputDirectoryPath.resolve("unigrams.json").toFile().readText()).isEqualTo(
+            """{"language":"ENGLISH","ngrams":{}}"""
+        )
+    }
+
+    @Test
+    fun `assert that relative input directory path throws exception`() {
+        val relativeInputDirectoryPath = Path("some/relative/path")
+        val exception = assertThrows<IllegalArgumentException> {
+            LanguageModelFilesPruner.pruneAndWriteLanguageModelFiles(
+                inputDirectoryPath = relativeInputDirectoryPath,
+                outputDirectoryPath = Path("/some/output/directory"),
+                maximumSizeInBytes = 1024
+            )
+        }
+        assertThat(exception.message).isEqualTo(
+            "Input directory path '$relativeInputDirectoryPath' is not absolute"
+        )
+    }
+
+    @Test
+    fun `assert that non-existing input directory path throws exception`() {
+        val nonExistingInputDirectoryPath = Path("/some/non-existing/directory").toAbsolutePath()
+        val exception = assertThrows<NotDirectoryException> {
+            LanguageModelFilesPruner.pruneAndWriteLanguageModelFiles(
+                inputDirectoryPath = nonExistingInputDirectoryPath,
+                outputDirectoryPath = Path("/some/output/directory"),
+                maximumSizeInBytes = 1024
+            )
+        }
+        assertThat(exception.message).isEqualTo(
+            "Input directory '$nonExistingInputDirectoryPath' does not exist"
+        )
+    }
+
+    private fun writeLanguageModelFiles(directoryPath: Path) {
+        directoryPath.resolve("unigrams.json").toFile().writeText(unigramLanguageModel)
+        directoryPath.resolve("bigrams.json").toFile().writeText(bigramLanguageModel)
+    }
+
+    private fun String.minify() = this.replace(Regex("\n\\s*"), "")
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright © 2018-today Peter M. Stahl pemistahl@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either expressed or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pemistahl.lingua.internal
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+
+class AlphabetTest {
+
+    @Test
+    fun `assert that ngrams are assigned to the alphabet of all their characters`() {
+        assertThat(Alphabet.of("łąk")).isEqualTo(Alphabet.LATIN)
+        assertThat(Alphabet.of("алт")).isEqualTo(Alphabet.CYRILLIC)
+        assertThat(Alphabet.of("aлт")).isEqualTo(Alphabet.NONE)
+        assertThat(Alphabet.of("上海")).isEqualTo(Alphabet.HAN)
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright © 2018-today Peter M. Stahl pemistahl@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either expressed or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pemistahl.lingua.internal
+
+import it.unimi.dsi.fastutil.objects.Object2FloatOpenHashMap
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatIllegalArgumentException
+import org.assertj.core.api.Assertions.assertThatIllegalStateException
+import org.junit.jupiter.api.Test
+import java.io.ByteArrayOutputStream
+
+class BinaryLanguageModelTest {
+
+    private val frequencies = Object2FloatOpenHashMap(
+        mapOf(
+            "alt" to 0.19F,
+            "lte" to 0.2F,
+            "ter" to 0.2F,
+            "łąk" to 1F
+        )
+    )
+
+    @Test
+    fun `assert that binary language model can be written and read again`() {
+        val binary = ByteArrayOutputStream()
+
+        BinaryLanguageModel.toBinary(frequencies, 3, binary)
+
+        val model = BinaryLanguageModel.fromBinary(binary.toByteArray().inputStream())
+
+        assertThat(model).isEqualTo(PackedNgram.pack(frequencies))
+        assertThat(model.get(PackedNgram.pack("łąk"))).isEqualTo(1F)
+        assertThat(model.get(PackedNgram.pack("abc"))).isEqualTo(0F)
+    }
+
+    @Test
+    fun `assert that hashed fivegram keys survive the delta encoding`() {
+        val fivegramFrequencies = Object2FloatOpenHashMap(
+            mapOf(
+                "alter" to 0.19F,
+                "łąkaś" to 1F,
+                "上海大学是" to 0.5F
+            )
+        )
+        val binary = ByteArrayOutputStream()
+
+        BinaryLanguageModel.toBinary(fivegramFrequencies, 5, binary)
+
+        val model = BinaryLanguageModel.fromBinary(binary.toByteArray().inputStream())
+
+        assertThat(model).isEqualTo(PackedNgram.pack(fivegramFrequencies))
+    }
+
+    @Test
+    fun `assert that binary language model is smaller than the characters of its ngrams`() {
+        val manyFrequencies = Object2FloatOpenHashMap<String>()
+        for (first in 'a'..'z') {
+            for (second in 'a'..'z') {
+                for (third in 'a'..'z') {
+                    manyFrequencies.put("$first$second$third", (first - 'a' + 1) / 26F)
+                }
+            }
+        }
+        val binary = ByteArrayOutputStream()
+
+        BinaryLanguageModel.toBinary(manyFrequencies, 3, binary)
+
+        assertThat(binary.size()).isLessThan(manyFrequencies.size * 3 * Char.SIZE_BYTES)
+        assertThat(BinaryLanguageModel.fromBinary(binary.toByteArray().inputStream()))
+            .isEqualTo(PackedNgram.pack(manyFrequencies))
+    }
+
+    @Test
+    fun `assert that partitions of a language model are read into a single model`() {
+        val latinFrequencies = Object2FloatOpenHashMap(mapOf("alt" to 0.19F, "łąk" to 1F))
+        val cyrillicFrequencies = Object2FloatOpenHashMap(mapOf("алт" to 0.5F))
+        val latinBinary = ByteArrayOutputStream()
+        val cyrillicBinary = ByteArrayOutputStream()
+
+        BinaryLanguageModel.toBinary(latinFrequencies, 3, latinBinary)
+        BinaryLanguageModel.toBinary(cyrillicFrequencies, 3, cyrillicBinary)
+
+        val model = BinaryLanguageModel.fromBinary(
+            listOf(latinBinary.toByteArray().inputStream(), cyrillicBinary.toByteArray().inputStream())
+        )
+
+        assertThat(model.size).isEqualTo(3)
+        assertThat(model.get(PackedNgram.pack("łąk"))).isEqualTo(1F)
+        assertThat(model.get(PackedNgram.pack("алт"))).isEqualTo(0.5F)
+        assertThat(BinaryLanguageModel.fileNameOf(3, Alphabet.CYRILLIC)).isEqualTo("trigrams.cyrillic.bin")
+    }
+
+    @Test
+    fun `assert that language model spanning several blocks is decoded completely`() {
+        val manyFrequencies = Object2FloatOpenHashMap<String>()
+        for (first in 'a'..'z') {
+            for (second in 'a'..'z') {
+                for (third in 'a'..'z') {
+                    for (fourth in 'a'..'c') {
+                        manyFrequencies.put("$first$second$third$fourth", (fourth - 'a' + 1) / 3F)
+                    }
+                }
+            }
+        }
+        val binary = ByteArrayOutputStream()
+
+        BinaryLanguageModel.toBinary(manyFrequencies, 4, binary)
+
+        val model = BinaryLanguageModel.fromBinary(binary.toByteArray().inputStream())
+        val shardedModel = BinaryLanguageModel.fromBinary(listOf(binary.toByteArray().inputStream()), shardCount = 4)
+
+        assertThat(manyFrequencies.size).isGreaterThan(3 * BinaryLanguageModel.NGRAMS_PER_BLOCK)
+        assertThat(model).isEqualTo(PackedNgram.pack(manyFrequencies))
+        assertThat(shardedModel).isInstanceOf(ShardedLong2FloatMap::class.java)
+        assertThat(shardedModel).isEqualTo(PackedNgram.pack(manyFrequencies))
+    }
+
+    @Test
+    fun `assert that ngrams of different length are rejected`() {
+        assertThatIllegalArgumentException().isThrownBy {
+            BinaryLanguageModel.toBinary(frequencies, 4, ByteArrayOutputStream())
+        }.withMessageEndingWith(
+            "does not have length 4"
+        )
+    }
+
+    @Test
+    fun `assert that binary language model of another fivegram alphabet version is rejected`() {
+        val binary = ByteArrayOutputStream()
+        BinaryLanguageModel.toBinary(frequencies, 3, binary)
+        val bytes = binary.toByteArray()
+        // the alphabet version follows the magic number
+        bytes[7] = (PackedNgram.ALPHABET_VERSION + 1).toByte()
+
+        assertThatIllegalStateException().isThrownBy {
+            BinaryLanguageModel.fromBinary(bytes.inputStream())
+        }.withMessageContaining(
+            "fivegram alphabet version ${PackedNgram.ALPHABET_VERSION + 1}"
+        )
+    }
+}
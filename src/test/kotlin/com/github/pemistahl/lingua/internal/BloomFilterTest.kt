@@ -0,0 +1,99 @@
+/*
+ * Copyright © 2018-today Peter M. Stahl pemistahl@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either expressed or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pemistahl.lingua.internal
+
+import com.github.pemistahl.lingua.api.Language.BOKMAL
+import com.github.pemistahl.lingua.api.Language.DANISH
+import it.unimi.dsi.fastutil.longs.Long2FloatOpenHashMap
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatIllegalArgumentException
+import org.assertj.core.api.Assertions.withinPercentage
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+import org.junit.jupiter.params.ParameterizedTest
+import org.junit.jupiter.params.provider.ValueSource
+import java.nio.file.Path
+
+class BloomFilterTest {
+
+    private val ngrams = LongOpenHashSet((1L..100_000L).map { it * 2 })
+
+    @Test
+    fun `assert that bloom filter never rejects contained ngrams`() {
+        val bloomFilter = BloomFilter.fromNgrams(ngrams, 0.01)
+
+        assertThat(ngrams.all(bloomFilter::mightContain)).isTrue
+    }
+
+    @ParameterizedTest
+    @ValueSource(doubles = [0.1, 0.01, 0.001])
+    fun `assert that bloom filter rejects absent ngrams with the given false-positive rate`(falsePositiveRate: Double) {
+        val bloomFilter = BloomFilter.fromNgrams(ngrams, falsePositiveRate)
+        val falsePositiveCount = (1L..1_000_000L).count { bloomFilter.mightContain(it * 2 + 1) }
+
+        // 1,000,000 probes keep the sampling error at 0.001 below 4%, the remainder is left for the sizing
+        assertThat(falsePositiveCount / 1_000_000.0).isCloseTo(falsePositiveRate, withinPercentage(15))
+    }
+
+    @Test
+    fun `assert that bloom filter needs more memory for lower false-positive rates`() {
+        val sizeInBytes = BloomFilter.fromNgrams(ngrams, 0.01).sizeInBytes
+
+        assertThat(sizeInBytes).isBetween(100_000L, 150_000L)
+        assertThat(BloomFilter.fromNgrams(ngrams, 0.001).sizeInBytes).isGreaterThan(sizeInBytes)
+    }
+
+    @Test
+    fun `assert that bloom filter built from a language model contains all its ngrams`(@TempDir directoryPath: Path) {
+        val logProbabilities = Long2FloatOpenHashMap()
+        logProbabilities.defaultReturnValue(Float.NEGATIVE_INFINITY)
+        for (ngram in ngrams) {
+            logProbabilities.put(ngram, -(ngram % 1000).toFloat() - 1F)
+        }
+        val otherLogProbabilities = Long2FloatOpenHashMap(logProbabilities)
+        otherLogProbabilities.keys.removeIf { it % 3 == 0L }
+        otherLogProbabilities.put(1L, -1F)
+        val models = listOf(
+            HashLanguageModel(logProbabilities),
+            QuantizedLanguageModel.fromLogProbabilities(logProbabilities),
+            PerfectHashLanguageModel.fromLogProbabilities(logProbabilities),
+            SortedArrayLanguageModel.fromLogProbabilities(logProbabilities),
+            TieredLanguageModel(HashLanguageModel(logProbabilities)),
+            MappedLanguageModel.load(directoryPath, BOKMAL, 5) { logProbabilities },
+            ClusteredLanguageModel.fromLogProbabilities(
+                mapOf(BOKMAL to logProbabilities, DANISH to otherLogProbabilities)
+            ).getValue(BOKMAL)
+        )
+
+        for (model in models) {
+            val modelNgrams = LongOpenHashSet()
+            model.forEachNgram(modelNgrams::add)
+            val bloomFilter = BloomFilter.fromLanguageModel(model, 0.01)
+
+            assertThat(modelNgrams).`as`(model.javaClass.simpleName).isEqualTo(ngrams)
+            assertThat(ngrams.all(bloomFilter::mightContain)).isTrue
+            assertThat(bloomFilter.sizeInBytes).isEqualTo(BloomFilter.fromNgrams(ngrams, 0.01).sizeInBytes)
+        }
+    }
+
+    @Test
+    fun `assert that invalid false-positive rates are rejected`() {
+        assertThatIllegalArgumentException().isThrownBy { BloomFilter.fromNgrams(ngrams, 0.0) }
+        assertThatIllegalArgumentException().isThrownBy { BloomFilter.fromNgrams(ngrams, 1.0) }
+    }
+}
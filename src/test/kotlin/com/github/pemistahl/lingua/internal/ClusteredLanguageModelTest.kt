@@ -0,0 +1,63 @@
+/*
+ * Copyright © 2018-today Peter M. Stahl pemistahl@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either expressed or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pemistahl.lingua.internal
+
+import com.github.pemistahl.lingua.api.Language.BOKMAL
+import com.github.pemistahl.lingua.api.Language.DANISH
+import com.github.pemistahl.lingua.api.Language.NYNORSK
+import it.unimi.dsi.fastutil.longs.Long2FloatOpenHashMap
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+
+class ClusteredLanguageModelTest {
+
+    private val logProbabilities = mapOf(
+        BOKMAL to Long2FloatOpenHashMap(
+            longArrayOf(PackedNgram.pack("ikk"), PackedNgram.pack("jeg"), PackedNgram.pack("hva")),
+            floatArrayOf(-1F, -2F, -3F)
+        ),
+        NYNORSK to Long2FloatOpenHashMap(
+            longArrayOf(PackedNgram.pack("ikk"), PackedNgram.pack("egt"), PackedNgram.pack("kva")),
+            floatArrayOf(-1.5F, -2.5F, -3.5F)
+        ),
+        DANISH to Long2FloatOpenHashMap(
+            longArrayOf(PackedNgram.pack("ikk"), PackedNgram.pack("jeg"), PackedNgram.pack("hvo")),
+            floatArrayOf(-1.25F, -2.25F, -3.25F)
+        )
+    )
+
+    private val models = ClusteredLanguageModel.fromLogProbabilities(logProbabilities)
+
+    @Test
+    fun `assert that clustered language models answer lookups like the original models`() {
+        assertThat(models.keys).containsExactlyInAnyOrder(BOKMAL, NYNORSK, DANISH)
+
+        for ((language, languageLogProbabilities) in logProbabilities) {
+            val model = models.getValue(language)
+            assertThat(model.size).isEqualTo(3)
+            for (ngram in languageLogProbabilities.keys) {
+                assertThat(model.getLogProbability(ngram)).isEqualTo(languageLogProbabilities.get(ngram))
+            }
+        }
+
+        val nynorskModel = models.getValue(NYNORSK)
+        val bokmalModel = models.getValue(BOKMAL)
+        assertThat(nynorskModel.getLogProbability(PackedNgram.pack("jeg"))).isEqualTo(Float.NEGATIVE_INFINITY)
+        assertThat(bokmalModel.getLogProbability(PackedNgram.pack("kva"))).isEqualTo(Float.NEGATIVE_INFINITY)
+        assertThat(bokmalModel.getLogProbability(PackedNgram.pack("zzz"))).isEqualTo(Float.NEGATIVE_INFINITY)
+    }
+}
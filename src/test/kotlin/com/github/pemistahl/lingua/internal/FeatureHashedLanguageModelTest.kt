@@ -0,0 +1,99 @@
+/*
+ * Copyright © 2018-today Peter M. Stahl pemistahl@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either expressed or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pemistahl.lingua.internal
+
+import com.github.pemistahl.lingua.api.Language
+import com.github.pemistahl.lingua.api.Language.ENGLISH
+import com.github.pemistahl.lingua.api.Language.FRENCH
+import com.github.pemistahl.lingua.api.Language.GERMAN
+import it.unimi.dsi.fastutil.longs.Long2FloatOpenHashMap
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatIllegalArgumentException
+import org.junit.jupiter.api.Test
+
+class FeatureHashedLanguageModelTest {
+
+    private val logProbabilities = mapOf(
+        GERMAN to Long2FloatOpenHashMap(
+            longArrayOf(PackedNgram.pack("al"), PackedNgram.pack("te")),
+            floatArrayOf(-1.5F, -2.5F)
+        ),
+        ENGLISH to Long2FloatOpenHashMap(
+            longArrayOf(PackedNgram.pack("al"), PackedNgram.pack("th")),
+            floatArrayOf(-1F, -2F)
+        )
+    )
+
+    private val loader = { language: Language, ngramLength: Int ->
+        if (ngramLength == 2) logProbabilities.getValue(language) else Long2FloatOpenHashMap()
+    }
+
+    @Test
+    fun `assert that feature-hashed language model answers lookups like the original models without collisions`() {
+        val model = FeatureHashedLanguageModel.fromLanguageModels(listOf(GERMAN, ENGLISH), 1 shl 20, loader)
+
+        assertThat(model.languages).containsExactly(ENGLISH, GERMAN)
+        assertThat(model.sizeInBytes).isEqualTo((1L shl 20) * 2 * Int.SIZE_BYTES)
+
+        assertThat(model.getLogProbability(ENGLISH, PackedNgram.pack("al"), 2)).isEqualTo(-1F)
+        assertThat(model.getLogProbability(GERMAN, PackedNgram.pack("al"), 2)).isEqualTo(-1.5F)
+        assertThat(model.getLogProbability(ENGLISH, PackedNgram.pack("th"), 2)).isEqualTo(-2F)
+        assertThat(model.getLogProbability(GERMAN, PackedNgram.pack("th"), 2)).isEqualTo(Float.NEGATIVE_INFINITY)
+        assertThat(model.getLogProbability(GERMAN, PackedNgram.pack("te"), 2)).isEqualTo(-2.5F)
+        assertThat(model.getLogProbability(FRENCH, PackedNgram.pack("al"), 2)).isEqualTo(Float.NEGATIVE_INFINITY)
+    }
+
+    @Test
+    fun `assert that colliding ngrams of a language keep only the most probable one`() {
+        val model = FeatureHashedLanguageModel.fromLanguageModels(listOf(GERMAN, ENGLISH), 1, loader)
+
+        assertThat(model.rowOf(PackedNgram.pack("zz"), 2)).isEqualTo(model.rowOf(PackedNgram.pack("a"), 1))
+        assertThat(model.getLogProbability(ENGLISH, PackedNgram.pack("al"), 2)).isEqualTo(-1F)
+        assertThat(model.getLogProbability(ENGLISH, PackedNgram.pack("th"), 2)).isEqualTo(Float.NEGATIVE_INFINITY)
+        assertThat(model.getLogProbability(GERMAN, PackedNgram.pack("al"), 2)).isEqualTo(-1.5F)
+        assertThat(model.getLogProbability(GERMAN, PackedNgram.pack("te"), 2)).isEqualTo(Float.NEGATIVE_INFINITY)
+        assertThat(model.columnOf(FRENCH)).isEqualTo(-1)
+    }
+
+    @Test
+    fun `assert that absent ngrams are rejected by their fingerprint`() {
+        val model = FeatureHashedLanguageModel.fromLanguageModels(listOf(GERMAN, ENGLISH), 1, loader)
+        val row = model.rowOf(PackedNgram.pack("al"), 2)
+        val column = model.columnOf(ENGLISH)
+
+        assertThat(model.logProbabilityAt(row, column, model.fingerprintOf(PackedNgram.pack("al"), 2))).isEqualTo(-1F)
+        assertThat(model.logProbabilityAt(row, column, model.fingerprintOf(PackedNgram.pack("zz"), 2)))
+            .isEqualTo(Float.NEGATIVE_INFINITY)
+    }
+
+    @Test
+    fun `assert that each ngram order has buckets of its own`() {
+        val model = FeatureHashedLanguageModel.fromLanguageModels(listOf(GERMAN, ENGLISH), 100, loader)
+        val bucketOf = { ngram: String -> model.rowOf(PackedNgram.pack(ngram), ngram.length) / model.languages.size }
+
+        assertThat(listOf("a", "b", "c").map(bucketOf)).allMatch { it in 0 until 5 }
+        assertThat(listOf("ab", "bc", "cd").map(bucketOf)).allMatch { it in 5 until 15 }
+        assertThat(listOf("alter", "ltere", "teres").map(bucketOf)).allMatch { it in 65 until 100 }
+    }
+
+    @Test
+    fun `assert that bucket count must be greater than zero`() {
+        assertThatIllegalArgumentException().isThrownBy {
+            FeatureHashedLanguageModel.fromLanguageModels(listOf(GERMAN, ENGLISH), 0, loader)
+        }.withMessage("bucket count must be greater than 0")
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright © 2018-today Peter M. Stahl pemistahl@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either expressed or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pemistahl.lingua.internal
+
+import com.github.pemistahl.lingua.api.Language.ENGLISH
+import com.github.pemistahl.lingua.api.Language.FRENCH
+import com.github.pemistahl.lingua.api.Language.GERMAN
+import it.unimi.dsi.fastutil.longs.Long2FloatOpenHashMap
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+
+class FusedLanguageModelTest {
+
+    private val model = FusedLanguageModel.fromLogProbabilities(
+        mapOf(
+            GERMAN to Long2FloatOpenHashMap(
+                longArrayOf(PackedNgram.pack("al"), PackedNgram.pack("te")),
+                floatArrayOf(-1.5F, -2.5F)
+            ),
+            ENGLISH to Long2FloatOpenHashMap(
+                longArrayOf(PackedNgram.pack("al"), PackedNgram.pack("th")),
+                floatArrayOf(-1F, -2F)
+            )
+        )
+    )
+
+    @Test
+    fun `assert that fused language model answers lookups like the original models`() {
+        assertThat(model.size).isEqualTo(3)
+
+        assertThat(model.getLogProbability(ENGLISH, PackedNgram.pack("al"))).isEqualTo(-1F)
+        assertThat(model.getLogProbability(GERMAN, PackedNgram.pack("al"))).isEqualTo(-1.5F)
+        assertThat(model.getLogProbability(ENGLISH, PackedNgram.pack("th"))).isEqualTo(-2F)
+        assertThat(model.getLogProbability(GERMAN, PackedNgram.pack("th"))).isEqualTo(Float.NEGATIVE_INFINITY)
+        assertThat(model.getLogProbability(GERMAN, PackedNgram.pack("te"))).isEqualTo(-2.5F)
+        assertThat(model.getLogProbability(FRENCH, PackedNgram.pack("al"))).isEqualTo(Float.NEGATIVE_INFINITY)
+        assertThat(model.getLogProbability(ENGLISH, PackedNgram.pack("zz"))).isEqualTo(Float.NEGATIVE_INFINITY)
+    }
+
+    @Test
+    fun `assert that entries of an ngram are sorted by language ordinal`() {
+        val position = model.positionOf(PackedNgram.pack("al"))
+        val entries = model.firstEntryAt(position) until model.endOfEntriesAt(position)
+
+        assertThat(entries.map(model::languageOrdinalOf)).containsExactly(ENGLISH.ordinal, GERMAN.ordinal)
+        assertThat(entries.map(model::logProbabilityOf)).containsExactly(-1F, -1.5F)
+        assertThat(model.positionOf(PackedNgram.pack("zz"))).isEqualTo(-1)
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright © 2018-today Peter M. Stahl pemistahl@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either expressed or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pemistahl.lingua.internal
+
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatIOException
+import org.junit.jupiter.api.Test
+
+class JsonLanguageModelReaderTest {
+
+    private val json = """
+        {
+            "language": "POLISH",
+            "ngrams": {
+                "3/100": "ab łą cd",
+                "1/7": "ąę",
+                "12/345": "𐐀a 𐐁b"
+            }
+        }
+    """.trimIndent()
+
+    @Test
+    fun `assert that ngrams are read in the same way as by the training data language model`() {
+        val frequencies = JsonLanguageModelReader.read(json.byteInputStream())
+
+        assertThat(frequencies).isEqualTo(PackedNgram.pack(TrainingDataLanguageModel.fromJson(json.byteInputStream())))
+        assertThat(frequencies).hasSize(6)
+        assertThat(frequencies.get(PackedNgram.pack("łą"))).isEqualTo(3F / 100)
+        assertThat(frequencies.get(PackedNgram.pack("cd"))).isEqualTo(3F / 100)
+        assertThat(frequencies.get(PackedNgram.pack("ąę"))).isEqualTo(1F / 7)
+        assertThat(frequencies.get(PackedNgram.pack("𐐀a"))).isEqualTo(12F / 345)
+        assertThat(frequencies.get(PackedNgram.pack("𐐁b"))).isEqualTo(12F / 345)
+    }
+
+    @Test
+    fun `assert that ngrams can be filtered while reading`() {
+        val frequencies = JsonLanguageModelReader.read(json.byteInputStream()) { ngram -> ngram[0] in 'a'..'z' }
+
+        assertThat(frequencies.keys).containsExactlyInAnyOrder(PackedNgram.pack("ab"), PackedNgram.pack("cd"))
+    }
+
+    @Test
+    fun `assert that ngrams spanning buffer boundaries are read correctly`() {
+        val ngrams = mutableListOf<String>()
+        for (first in 'ą'..'ž') {
+            for (second in 'a'..'z') {
+                for (third in 'α'..'ω') {
+                    ngrams.add("$first$second$third")
+                }
+            }
+        }
+        val largeJson = """{"language":"POLISH","ngrams":{"1/2":"${ngrams.joinToString(" ")}"}}"""
+
+        val frequencies = JsonLanguageModelReader.read(largeJson.byteInputStream())
+
+        assertThat(largeJson.toByteArray().size).isGreaterThan(1 shl 16)
+        assertThat(frequencies.keys).containsExactlyInAnyOrderElementsOf(ngrams.map(PackedNgram::pack))
+    }
+
+    @Test
+    fun `assert that malformed language model json is rejected`() {
+        assertThatIOException().isThrownBy {
+            JsonLanguageModelReader.read("""{"language":"POLISH","ngrams":{"1/x":"ab"}}""".byteInputStream())
+        }
+        assertThatIOException().isThrownBy {
+            JsonLanguageModelReader.read("""{"language":"POLISH","ngrams":{"1/2":"ab""".byteInputStream())
+        }
+        assertThatIOException().isThrownBy {
+            JsonLanguageModelReader.read("""{"languages":"POLISH"}""".byteInputStream())
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright © 2018-today Peter M. Stahl pemistahl@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either expressed or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pemistahl.lingua.internal
+
+import com.github.pemistahl.lingua.api.Language.ENGLISH
+import com.github.pemistahl.lingua.api.Language.FRENCH
+import com.github.pemistahl.lingua.api.Language.GERMAN
+import com.github.pemistahl.lingua.api.LanguageModelCacheStatistics
+import it.unimi.dsi.fastutil.longs.Long2FloatOpenHashMap
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+
+class LanguageModelCacheTest {
+
+    private val modelSizeInBytes = HashLanguageModel(Long2FloatOpenHashMap()).sizeInBytes
+
+    @Test
+    fun `assert that least recently used language models are evicted when over budget`() {
+        val cache = LanguageModelCache(maximumSizeInBytes = 2 * modelSizeInBytes) { _, _ ->
+            HashLanguageModel(Long2FloatOpenHashMap())
+        }
+        val trigramModels = cache.languageModels[2]
+        val quadrigramModels = cache.languageModels[3]
+
+        trigramModels.getOrLoad(ENGLISH)
+        trigramModels.getOrLoad(GERMAN)
+        trigramModels.getOrLoad(ENGLISH)
+        quadrigramModels.getOrLoad(FRENCH)
+
+        assertThat(trigramModels[ENGLISH]).isNotNull
+        assertThat(trigramModels[GERMAN]).isNull()
+        assertThat(quadrigramModels[FRENCH]).isNotNull
+        assertThat(cache.statistics).isEqualTo(
+            LanguageModelCacheStatistics(
+                hitCount = 1,
+                missCount = 3,
+                evictionCount = 1,
+                sizeInBytes = 2 * modelSizeInBytes
+            )
+        )
+    }
+
+    @Test
+    fun `assert that evicted language models are loaded again on demand`() {
+        var loadCount = 0
+        val cache = LanguageModelCache(maximumSizeInBytes = modelSizeInBytes) { _, _ ->
+            loadCount++
+            HashLanguageModel(Long2FloatOpenHashMap())
+        }
+        val unigramModels = cache.languageModels[0]
+
+        unigramModels.getOrLoad(ENGLISH)
+        unigramModels.getOrLoad(GERMAN)
+        unigramModels.getOrLoad(ENGLISH)
+
+        assertThat(unigramModels[GERMAN]).isNull()
+        assertThat(loadCount).isEqualTo(3)
+        assertThat(cache.statistics.evictionCount).isEqualTo(2)
+    }
+
+    @Test
+    fun `assert that accessing loaded language models does not advance the clock`() {
+        val cache = LanguageModelCache(maximumSizeInBytes = 2 * modelSizeInBytes) { _, _ ->
+            HashLanguageModel(Long2FloatOpenHashMap())
+        }
+        val unigramModels = cache.languageModels[0]
+
+        unigramModels.getOrLoad(ENGLISH)
+        unigramModels.getOrLoad(GERMAN)
+        val accessTime = cache.now()
+
+        unigramModels.getOrLoad(ENGLISH)
+        unigramModels.getOrLoad(ENGLISH)
+
+        assertThat(cache.now()).isEqualTo(accessTime)
+        assertThat(unigramModels.lastAccessTimeOf(ENGLISH)).isEqualTo(accessTime)
+        assertThat(unigramModels.lastAccessTimeOf(GERMAN)).isLessThan(accessTime)
+        assertThat(cache.statistics.hitCount).isEqualTo(2)
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright © 2018-today Peter M. Stahl pemistahl@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either expressed or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pemistahl.lingua.internal
+
+import com.github.pemistahl.lingua.api.Language.ENGLISH
+import com.github.pemistahl.lingua.api.Language.GERMAN
+import it.unimi.dsi.fastutil.longs.Long2FloatOpenHashMap
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatIllegalStateException
+import org.junit.jupiter.api.Test
+import java.util.concurrent.Callable
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+
+class LanguageModelRegistryTest {
+
+    @Test
+    fun `assert that language models are loaded lazily and only once`() {
+        var loadCount = 0
+        val registry = LanguageModelRegistry {
+            loadCount++
+            HashLanguageModel(Long2FloatOpenHashMap(longArrayOf(PackedNgram.pack("a")), floatArrayOf(-0.5F)))
+        }
+
+        assertThat(registry.isEmpty()).isTrue
+        assertThat(registry[ENGLISH]).isNull()
+
+        val model = registry.getOrLoad(ENGLISH)
+
+        assertThat(model.getLogProbability(PackedNgram.pack("a"))).isEqualTo(-0.5F)
+        assertThat(registry.getOrLoad(ENGLISH)).isSameAs(model)
+        assertThat(registry[ENGLISH]).isSameAs(model)
+        assertThat(registry[GERMAN]).isNull()
+        assertThat(loadCount).isEqualTo(1)
+    }
+
+    @Test
+    fun `assert that concurrent first requests load a language model only once`() {
+        val loadCount = AtomicInteger()
+        val loadingStarted = CountDownLatch(1)
+        val registry = LanguageModelRegistry {
+            loadCount.incrementAndGet()
+            loadingStarted.countDown()
+            Thread.sleep(100)
+            HashLanguageModel(Long2FloatOpenHashMap())
+        }
+        val executor = Executors.newFixedThreadPool(8)
+
+        try {
+            val futures = List(8) { executor.submit(Callable { registry.getOrLoad(ENGLISH) }) }
+            loadingStarted.await()
+            val models = futures.map { it.get() }
+
+            assertThat(models).containsOnly(models.first())
+            assertThat(loadCount.get()).isEqualTo(1)
+        } finally {
+            executor.shutdownNow()
+        }
+    }
+
+    @Test
+    fun `assert that a thread asking again for the language model it is loading fails instead of waiting`() {
+        var loadCount = 0
+        lateinit var registry: LanguageModelRegistry<HashLanguageModel>
+        registry = LanguageModelRegistry { language ->
+            loadCount++
+            registry.getOrLoad(language)
+        }
+
+        assertThatIllegalStateException()
+            .isThrownBy { registry.getOrLoad(ENGLISH) }
+            .withMessage("language model of ENGLISH has been requested again while loading it")
+        assertThat(registry[ENGLISH]).isNull()
+        assertThat(loadCount).isEqualTo(1)
+    }
+
+    @Test
+    fun `assert that a failed load is reported to all waiting threads and can be retried`() {
+        val loadingStarted = CountDownLatch(1)
+        val isFailing = AtomicBoolean(true)
+        val registry = LanguageModelRegistry {
+            loadingStarted.countDown()
+            Thread.sleep(100)
+            check(!isFailing.get()) { "model file is corrupt" }
+            HashLanguageModel(Long2FloatOpenHashMap())
+        }
+        val executor = Executors.newFixedThreadPool(4)
+
+        try {
+            val futures = List(4) { executor.submit(Callable { runCatching { registry.getOrLoad(ENGLISH) } }) }
+            loadingStarted.await()
+
+            for (future in futures) {
+                assertThat(future.get().exceptionOrNull()).isInstanceOf(IllegalStateException::class.java)
+            }
+            assertThat(registry[ENGLISH]).isNull()
+
+            isFailing.set(false)
+
+            assertThat(registry.getOrLoad(ENGLISH)).isNotNull
+        } finally {
+            executor.shutdownNow()
+        }
+    }
+
+    @Test
+    fun `assert that language models can be removed and reloaded`() {
+        var loadCount = 0
+        val registry = LanguageModelRegistry {
+            loadCount++
+            HashLanguageModel(Long2FloatOpenHashMap())
+        }
+
+        registry.getOrLoad(ENGLISH)
+        registry.getOrLoad(GERMAN)
+        registry.remove(ENGLISH)
+
+        assertThat(registry[ENGLISH]).isNull()
+        assertThat(registry[GERMAN]).isNotNull
+        assertThat(registry.isNotEmpty()).isTrue
+
+        registry.clear()
+
+        assertThat(registry.isEmpty()).isTrue
+
+        registry.getOrLoad(ENGLISH)
+
+        assertThat(loadCount).isEqualTo(3)
+    }
+
+    @Test
+    fun `assert that language models are freed only when their last lease is released`() {
+        val registry = LanguageModelRegistry { HashLanguageModel(Long2FloatOpenHashMap()) }
+
+        val firstGeneration = registry.acquire(ENGLISH)
+        val secondGeneration = registry.acquire(ENGLISH)
+        registry.getOrLoad(ENGLISH)
+        registry.getOrLoad(GERMAN)
+
+        registry.release(ENGLISH, firstGeneration)
+        registry.removeIfUnleased(GERMAN)
+
+        assertThat(registry[ENGLISH]).isNotNull
+        assertThat(registry[GERMAN]).isNull()
+
+        registry.release(ENGLISH, secondGeneration)
+
+        assertThat(registry[ENGLISH]).isNull()
+    }
+
+    @Test
+    fun `assert that leases taken before clearing the registry are void`() {
+        val registry = LanguageModelRegistry { HashLanguageModel(Long2FloatOpenHashMap()) }
+
+        val staleGeneration = registry.acquire(ENGLISH)
+        registry.clear()
+        val generation = registry.acquire(ENGLISH)
+        registry.getOrLoad(ENGLISH)
+
+        registry.release(ENGLISH, staleGeneration)
+
+        assertThat(registry[ENGLISH]).isNotNull
+
+        registry.release(ENGLISH, generation)
+
+        assertThat(registry[ENGLISH]).isNull()
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright © 2018-today Peter M. Stahl pemistahl@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either expressed or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pemistahl.lingua.internal
+
+import com.github.pemistahl.lingua.api.Language.ENGLISH
+import it.unimi.dsi.fastutil.objects.Object2FloatOpenHashMap
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+import java.nio.ByteBuffer
+import java.nio.file.Files
+import java.nio.file.Path
+
+class MappedLanguageModelTest {
+
+    private val logProbabilities = LanguageModel.toLogProbabilities(
+        PackedNgram.pack(
+            Object2FloatOpenHashMap(
+                mapOf(
+                    "alter" to 0.19F,
+                    "ltere" to 0.2F,
+                    "terer" to 0.21F,
+                    "łąkaś" to 1F,
+                    "上海大学是" to 0.5F
+                )
+            )
+        )
+    )
+
+    @Test
+    fun `assert that memory-mapped language model answers lookups like the original model`(
+        @TempDir directoryPath: Path
+    ) {
+        val model = MappedLanguageModel.load(directoryPath, ENGLISH, 5) { logProbabilities }
+
+        assertThat(Files.isRegularFile(directoryPath.resolve("en/fivegrams.mapped"))).isTrue
+        assertThat(model.size).isEqualTo(5)
+
+        for (ngram in logProbabilities.keys) {
+            assertThat(model.getLogProbability(ngram)).isEqualTo(logProbabilities.get(ngram))
+        }
+        assertThat(model.getLogProbability(PackedNgram.pack("abcde"))).isEqualTo(Float.NEGATIVE_INFINITY)
+        assertThat(model.getLogProbability(PackedNgram.pack("上海大学"))).isEqualTo(Float.NEGATIVE_INFINITY)
+    }
+
+    @Test
+    fun `assert that existing memory-mapped language model files are reused`(@TempDir directoryPath: Path) {
+        MappedLanguageModel.load(directoryPath, ENGLISH, 5) { logProbabilities }
+
+        val model = MappedLanguageModel.load(directoryPath, ENGLISH, 5) {
+            throw AssertionError("model file should not be written again")
+        }
+
+        assertThat(model.getLogProbability(PackedNgram.pack("łąkaś"))).isEqualTo(0F)
+    }
+
+    @Test
+    fun `assert that memory-mapped language model files with another fivegram alphabet are replaced`(
+        @TempDir directoryPath: Path
+    ) {
+        MappedLanguageModel.load(directoryPath, ENGLISH, 5) { logProbabilities }
+
+        val filePath = directoryPath.resolve("en/fivegrams.mapped")
+        val bytes = Files.readAllBytes(filePath)
+        ByteBuffer.wrap(bytes).putInt(4, PackedNgram.ALPHABET_VERSION + 1)
+        Files.write(filePath, bytes)
+
+        var isWrittenAgain = false
+        val model = MappedLanguageModel.load(directoryPath, ENGLISH, 5) {
+            isWrittenAgain = true
+            logProbabilities
+        }
+
+        assertThat(isWrittenAgain).isTrue
+        assertThat(ByteBuffer.wrap(Files.readAllBytes(filePath)).getInt(4)).isEqualTo(PackedNgram.ALPHABET_VERSION)
+        assertThat(model.getLogProbability(PackedNgram.pack("łąkaś"))).isEqualTo(0F)
+    }
+}
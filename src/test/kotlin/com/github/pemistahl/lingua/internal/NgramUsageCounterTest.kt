@@ -0,0 +1,62 @@
+/*
+ * Copyright © 2018-today Peter M. Stahl pemistahl@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either expressed or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pemistahl.lingua.internal
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+import kotlin.concurrent.thread
+
+class NgramUsageCounterTest {
+
+    @Test
+    fun `assert that ngrams are ranked by the number of their lookups`() {
+        val counter = NgramUsageCounter(maximumNgramCount = 10)
+
+        counter.record(TestDataLanguageModel.fromText("abab", ngramLength = 2).packedNgrams)
+        counter.record(TestDataLanguageModel.fromText("ab", ngramLength = 2).packedNgrams)
+
+        assertThat(counter.rankedNgrams(2)).containsExactly(PackedNgram.pack("ab"), PackedNgram.pack("ba"))
+        assertThat(counter.rankedNgrams(1)).containsExactly(PackedNgram.pack("a"), PackedNgram.pack("b"))
+        assertThat(counter.rankedNgrams(3)).isEmpty()
+    }
+
+    @Test
+    fun `assert that no more than the maximum number of ngrams are tracked`() {
+        val counter = NgramUsageCounter(maximumNgramCount = 1)
+
+        counter.record(TestDataLanguageModel.fromText("a", ngramLength = 1).packedNgrams)
+        counter.record(TestDataLanguageModel.fromText("bb", ngramLength = 1).packedNgrams)
+        counter.record(TestDataLanguageModel.fromText("a", ngramLength = 1).packedNgrams)
+
+        assertThat(counter.rankedNgrams(1)).containsExactly(PackedNgram.pack("a"))
+    }
+
+    @Test
+    fun `assert that ngrams recorded on several threads are merged when ranked`() {
+        val counter = NgramUsageCounter(maximumNgramCount = 10)
+        val frequentNgrams = TestDataLanguageModel.fromText("ab", ngramLength = 2).packedNgrams
+        val threads = List(8) {
+            thread {
+                repeat(1000) { counter.record(frequentNgrams) }
+            }
+        }
+        threads.forEach(Thread::join)
+        counter.record(TestDataLanguageModel.fromText("cd", ngramLength = 2).packedNgrams)
+
+        assertThat(counter.rankedNgrams(2)).containsExactly(PackedNgram.pack("ab"), PackedNgram.pack("cd"))
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright © 2018-today Peter M. Stahl pemistahl@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either expressed or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pemistahl.lingua.internal
+
+import com.github.pemistahl.lingua.api.Language
+import it.unimi.dsi.fastutil.objects.Object2FloatOpenHashMap
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatIllegalArgumentException
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.params.ParameterizedTest
+import org.junit.jupiter.params.provider.MethodSource
+import java.io.InputStream
+
+class PackedNgramTest {
+
+    @Test
+    fun `assert that lower-order ngrams are packed losslessly`() {
+        assertThat(PackedNgram.pack("a")).isEqualTo(0x61L)
+        assertThat(PackedNgram.pack("ab")).isEqualTo(0x00610062L)
+        assertThat(PackedNgram.pack("abc")).isEqualTo(0x006100620063L)
+        assertThat(PackedNgram.pack("ꙮbcd")).isEqualTo(0xA66E006200630064uL.toLong())
+    }
+
+    @Test
+    fun `assert that distinct fivegrams are packed into distinct keys`() {
+        val fivegrams = listOf("alter", "ltera", "łąkaś", "ʻokina", "ηλιος", "мовах", "ვაშლი", "上海大学是", "上海大学的")
+            .map { it.take(5) }
+        val keys = fivegrams.map(PackedNgram::pack)
+
+        assertThat(keys).doesNotHaveDuplicates().doesNotContain(0L)
+        assertThat(keys.take(7)).allMatch { it > 0 }
+        assertThat(keys.drop(7)).allMatch { it < 0 }
+        assertThat(PackedNgram.pack("alter".toCharArray(), 0, 5)).isEqualTo(PackedNgram.pack("alter"))
+        assertThat(PackedNgram.pack("xxalter".toCharArray(), 2, 5)).isEqualTo(PackedNgram.pack("alter"))
+    }
+
+    @Test
+    fun `assert that fivegram keys do not depend on the Unicode version of the JDK`() {
+        assertThat(PackedNgram.ALPHABET_VERSION).isEqualTo(1)
+        assertThat(PackedNgram.pack("alter")).isEqualTo(10013123011024104L)
+        assertThat(PackedNgram.pack("ვაშლი")).isEqualTo(683424473876232182L)
+        // U+0870 is an Arabic letter only since Unicode 14, so it is not part of the alphabet
+        assertThat(PackedNgram.pack("\u0870بببب")).isEqualTo(-6509398588020699105L)
+    }
+
+    @ParameterizedTest
+    @MethodSource("languagesWithFivegramModelsProvider")
+    fun `assert that hardly any fivegram of the bundled language models is packed into a hash`(language: Language) {
+        val binaryInputStreams = fivegramModelInputStreamsOf(language)
+        val fivegrams = try {
+            BinaryLanguageModel.fromBinary(binaryInputStreams)
+        } finally {
+            binaryInputStreams.forEach(InputStream::close)
+        }
+        val hashedFivegramCount = fivegrams.keys.count { it < 0 }
+
+        assertThat(hashedFivegramCount.toDouble() / fivegrams.size).isLessThan(0.001)
+    }
+
+    private fun languagesWithFivegramModelsProvider() = Language.all().filter { language ->
+        fivegramModelInputStreamsOf(language).onEach(InputStream::close).isNotEmpty()
+    }
+
+    private fun fivegramModelInputStreamsOf(language: Language) = Alphabet.values().mapNotNull { alphabet ->
+        Language::class.java.getResourceAsStream(
+            "/language-models/${language.isoCode639_1}/${BinaryLanguageModel.fileNameOf(5, alphabet)}"
+        )
+    }
+
+    @Test
+    fun `assert that ngrams are packed together with their lower-order prefixes`() {
+        assertThat(PackedNgram.packWithLowerOrders("alter")).containsExactly(
+            PackedNgram.pack("alter"),
+            PackedNgram.pack("alte"),
+            PackedNgram.pack("alt"),
+            PackedNgram.pack("al"),
+            PackedNgram.pack("a")
+        )
+    }
+
+    @Test
+    fun `assert that ngrams can be unpacked`() {
+        for (ngram in listOf("a", "ab", "abc", "ꙮbcd", "alter", "łąkaś", "ηλιος", "ვაშლი")) {
+            assertThat(PackedNgram.unpack(PackedNgram.pack(ngram), ngram.length)).isEqualTo(ngram)
+        }
+        assertThatIllegalArgumentException().isThrownBy { PackedNgram.unpack(PackedNgram.pack("上海大学是"), 5) }
+    }
+
+    @Test
+    fun `assert that frequencies can be packed`() {
+        val packedFrequencies = PackedNgram.pack(Object2FloatOpenHashMap(mapOf("alter" to 0.5F, "ltere" to 0.25F)))
+
+        assertThat(packedFrequencies.size).isEqualTo(2)
+        assertThat(packedFrequencies.get(PackedNgram.pack("alter"))).isEqualTo(0.5F)
+        assertThat(packedFrequencies.get(PackedNgram.pack("ltere"))).isEqualTo(0.25F)
+    }
+
+    @Test
+    fun `assert that zerograms and ngrams longer than five characters can not be packed`() {
+        assertThatIllegalArgumentException().isThrownBy { PackedNgram.pack("") }
+        assertThatIllegalArgumentException().isThrownBy { PackedNgram.pack("abcdef") }
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright © 2018-today Peter M. Stahl pemistahl@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either expressed or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pemistahl.lingua.internal
+
+import it.unimi.dsi.fastutil.longs.Long2FloatOpenHashMap
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatIllegalStateException
+import org.junit.jupiter.api.Test
+import kotlin.math.ln
+
+class PerfectHashLanguageModelTest {
+
+    @Test
+    fun `assert that perfect hash language model answers lookups like the original model`() {
+        val logProbabilities = Long2FloatOpenHashMap()
+        for (i in 1..10_000) {
+            logProbabilities.put(i * 31L, ln(i / 10_000F))
+        }
+        logProbabilities.defaultReturnValue(Float.NEGATIVE_INFINITY)
+
+        val model = PerfectHashLanguageModel.fromLogProbabilities(logProbabilities)
+
+        assertThat(model.size).isEqualTo(10_000)
+
+        for (i in 1..10_000) {
+            assertThat(model.getLogProbability(i * 31L)).isEqualTo(logProbabilities.get(i * 31L))
+            assertThat(model.getLogProbability(i * 31L + 1)).isEqualTo(Float.NEGATIVE_INFINITY)
+        }
+    }
+
+    @Test
+    fun `assert that perfect hash language model fails if the seed search exceeds its limit`() {
+        val logProbabilities = Long2FloatOpenHashMap()
+        for (i in 1..10_000) {
+            logProbabilities.put(i * 31L, ln(i / 10_000F))
+        }
+
+        assertThatIllegalStateException()
+            .isThrownBy { PerfectHashLanguageModel.fromLogProbabilities(logProbabilities, maxSeed = 0) }
+            .withMessageStartingWith("no seed up to 0 maps the")
+    }
+
+    @Test
+    fun `assert that empty perfect hash language model contains no ngrams`() {
+        val model = PerfectHashLanguageModel.fromLogProbabilities(Long2FloatOpenHashMap())
+
+        assertThat(model.size).isEqualTo(0)
+        assertThat(model.getLogProbability(PackedNgram.pack("a"))).isEqualTo(Float.NEGATIVE_INFINITY)
+    }
+}
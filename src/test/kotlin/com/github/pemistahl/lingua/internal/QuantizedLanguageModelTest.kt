@@ -0,0 +1,70 @@
+/*
+ * Copyright © 2018-today Peter M. Stahl pemistahl@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either expressed or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pemistahl.lingua.internal
+
+import it.unimi.dsi.fastutil.longs.Long2FloatOpenHashMap
+import it.unimi.dsi.fastutil.objects.Object2FloatOpenHashMap
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.within
+import org.junit.jupiter.api.Test
+import kotlin.math.ln
+
+class QuantizedLanguageModelTest {
+
+    @Test
+    fun `assert that quantized language model with few distinct probabilities answers lookups exactly`() {
+        val logProbabilities = LanguageModel.toLogProbabilities(
+            PackedNgram.pack(
+                Object2FloatOpenHashMap(
+                    mapOf(
+                        "alter" to 0.19F,
+                        "ltere" to 0.2F,
+                        "terer" to 0.2F,
+                        "łąkaś" to 1F,
+                        "上海大学是" to 0.5F
+                    )
+                )
+            )
+        )
+        val model = QuantizedLanguageModel.fromLogProbabilities(logProbabilities)
+
+        assertThat(model.size).isEqualTo(5)
+
+        for (ngram in logProbabilities.keys) {
+            assertThat(model.getLogProbability(ngram)).isEqualTo(logProbabilities.get(ngram))
+        }
+        assertThat(model.getLogProbability(PackedNgram.pack("abcde"))).isEqualTo(Float.NEGATIVE_INFINITY)
+    }
+
+    @Test
+    fun `assert that quantized language model with many distinct probabilities stays within tolerance`() {
+        val logProbabilities = Long2FloatOpenHashMap()
+        for (i in 1..100_000) {
+            logProbabilities.put(i.toLong(), ln(i / 100_000F))
+        }
+        logProbabilities.defaultReturnValue(Float.NEGATIVE_INFINITY)
+
+        val model = QuantizedLanguageModel.fromLogProbabilities(logProbabilities)
+
+        assertThat(model.size).isEqualTo(100_000)
+
+        for (i in 1..100_000) {
+            assertThat(model.getLogProbability(i.toLong())).isCloseTo(logProbabilities.get(i.toLong()), within(1e-3F))
+        }
+        assertThat(model.getLogProbability(0L)).isEqualTo(Float.NEGATIVE_INFINITY)
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright © 2018-today Peter M. Stahl pemistahl@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either expressed or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pemistahl.lingua.internal
+
+import it.unimi.dsi.fastutil.longs.Long2FloatOpenHashMap
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatIllegalArgumentException
+import org.junit.jupiter.api.Test
+import kotlin.math.ln
+
+class ShardedLong2FloatMapTest {
+
+    private val shift = Long.SIZE_BITS - 2
+    private val ngrams = listOf("alt", "lte", "ter", "łąk", "ikk", "jeg").map(PackedNgram::pack)
+
+    private fun createModel() = ShardedLong2FloatMap(
+        Array(4) { shard ->
+            val shardModel = Long2FloatOpenHashMap()
+            ngrams.withIndex()
+                .filter { (_, ngram) -> ShardedLong2FloatMap.shardOf(ngram, shift) == shard }
+                .forEach { (i, ngram) -> shardModel.put(ngram, 1F / (i + 1)) }
+            shardModel
+        }
+    )
+
+    @Test
+    fun `assert that sharded map answers lookups like a single map`() {
+        val model = createModel()
+        val expectedModel = Long2FloatOpenHashMap()
+        ngrams.forEachIndexed { i, ngram -> expectedModel.put(ngram, 1F / (i + 1)) }
+        expectedModel.defaultReturnValue(Float.NEGATIVE_INFINITY)
+        model.defaultReturnValue(Float.NEGATIVE_INFINITY)
+
+        assertThat(model.size).isEqualTo(ngrams.size)
+        assertThat(model.keys).containsExactlyInAnyOrderElementsOf(ngrams)
+        assertThat(model).isEqualTo(expectedModel)
+        assertThat(expectedModel).isEqualTo(model)
+        for (ngram in ngrams) {
+            assertThat(model.get(ngram)).isEqualTo(expectedModel.get(ngram))
+            assertThat(model.containsKey(ngram)).isTrue
+        }
+        assertThat(model.get(PackedNgram.pack("zzz"))).isEqualTo(Float.NEGATIVE_INFINITY)
+        assertThat(model.containsKey(PackedNgram.pack("zzz"))).isFalse
+    }
+
+    @Test
+    fun `assert that log-probabilities can be computed in place`() {
+        val model = createModel()
+        LanguageModel.toLogProbabilities(model)
+
+        ngrams.forEachIndexed { i, ngram -> assertThat(model.get(ngram)).isEqualTo(ln(1F / (i + 1))) }
+        assertThat(model.get(PackedNgram.pack("zzz"))).isEqualTo(Float.NEGATIVE_INFINITY)
+    }
+
+    @Test
+    fun `assert that number of shards must be a power of two`() {
+        assertThatIllegalArgumentException().isThrownBy {
+            ShardedLong2FloatMap(Array(3) { Long2FloatOpenHashMap() })
+        }.withMessage(
+            "number of shards must be a power of two greater than one"
+        )
+    }
+}
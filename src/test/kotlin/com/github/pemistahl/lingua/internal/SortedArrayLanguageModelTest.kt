@@ -0,0 +1,45 @@
+/*
+ * Copyright © 2018-today Peter M. Stahl pemistahl@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either expressed or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pemistahl.lingua.internal
+
+import it.unimi.dsi.fastutil.longs.Long2FloatOpenHashMap
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.params.ParameterizedTest
+import org.junit.jupiter.params.provider.ValueSource
+import kotlin.math.ln
+
+class SortedArrayLanguageModelTest {
+
+    @ParameterizedTest
+    @ValueSource(ints = [0, 1, 2, 3, 7, 8, 1000])
+    fun `assert that sorted array language model answers lookups like the original model`(ngramCount: Int) {
+        val logProbabilities = Long2FloatOpenHashMap()
+        for (i in 1..ngramCount) {
+            logProbabilities.put(i * 31L - 500, ln(i / 1000F))
+        }
+        logProbabilities.defaultReturnValue(Float.NEGATIVE_INFINITY)
+
+        val model = SortedArrayLanguageModel.fromLogProbabilities(logProbabilities)
+
+        assertThat(model.size).isEqualTo(ngramCount)
+
+        for (i in 0..ngramCount + 1) {
+            assertThat(model.getLogProbability(i * 31L - 500)).isEqualTo(logProbabilities.get(i * 31L - 500))
+            assertThat(model.getLogProbability(i * 31L - 499)).isEqualTo(Float.NEGATIVE_INFINITY)
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright © 2018-today Peter M. Stahl pemistahl@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either expressed or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pemistahl.lingua.internal
+
+import com.github.pemistahl.lingua.api.Language.ENGLISH
+import it.unimi.dsi.fastutil.objects.Object2FloatOpenHashMap
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+import java.nio.file.Path
+
+class TieredLanguageModelTest {
+
+    private val logProbabilities = LanguageModel.toLogProbabilities(
+        PackedNgram.pack(
+            Object2FloatOpenHashMap(
+                mapOf(
+                    "alter" to 0.19F,
+                    "ltere" to 0.2F,
+                    "terer" to 0.21F,
+                    "łąkaś" to 1F,
+                    "上海大学是" to 0.5F
+                )
+            )
+        )
+    )
+
+    @Test
+    fun `assert that tiered language model answers lookups like its cold model`(@TempDir directoryPath: Path) {
+        val model = TieredLanguageModel(MappedLanguageModel.load(directoryPath, ENGLISH, 5) { logProbabilities })
+
+        assertThat(model.size).isEqualTo(5)
+        assertThat(model.hotSize).isEqualTo(0)
+
+        model.promote(
+            longArrayOf(PackedNgram.pack("abcde"), PackedNgram.pack("terer"), PackedNgram.pack("łąkaś")),
+            maximumCount = 2
+        )
+
+        assertThat(model.hotSize).isEqualTo(2)
+        for (ngram in logProbabilities.keys) {
+            assertThat(model.getLogProbability(ngram)).isEqualTo(logProbabilities.get(ngram))
+        }
+        assertThat(model.getLogProbability(PackedNgram.pack("abcde"))).isEqualTo(Float.NEGATIVE_INFINITY)
+    }
+
+    @Test
+    fun `assert that promoting ngrams replaces the previous hot ngrams`(@TempDir directoryPath: Path) {
+        val model = TieredLanguageModel(MappedLanguageModel.load(directoryPath, ENGLISH, 5) { logProbabilities })
+
+        model.promote(longArrayOf(PackedNgram.pack("alter"), PackedNgram.pack("ltere")), maximumCount = 1)
+        assertThat(model.hotSize).isEqualTo(1)
+
+        model.promote(longArrayOf(), maximumCount = 1)
+        assertThat(model.hotSize).isEqualTo(0)
+        val ngram = PackedNgram.pack("alter")
+        assertThat(model.getLogProbability(ngram)).isEqualTo(logProbabilities.get(ngram))
+    }
+}
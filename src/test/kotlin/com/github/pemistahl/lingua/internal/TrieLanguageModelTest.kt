@@ -0,0 +1,66 @@
+/*
+ * Copyright © 2018-today Peter M. Stahl pemistahl@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either expressed or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pemistahl.lingua.internal
+
+import it.unimi.dsi.fastutil.objects.Object2FloatOpenHashMap
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+
+class TrieLanguageModelTest {
+
+    private val logProbabilitiesByOrder = listOf(
+        mapOf("a" to 0.5F, "l" to 0.4F, "上" to 0.1F),
+        mapOf("al" to 0.3F, "lt" to 0.2F),
+        mapOf("alt" to 0.1F),
+        mapOf("alte" to 0.05F, "ltes" to 0.02F),
+        mapOf("alter" to 0.01F, "上海大学是" to 0.03F)
+    ).map { LanguageModel.toLogProbabilities(PackedNgram.pack(Object2FloatOpenHashMap(it))) }
+
+    private val model = TrieLanguageModel.fromLogProbabilities(logProbabilitiesByOrder)
+
+    @Test
+    fun `assert that trie language model answers lookups like the original models`() {
+        assertThat(model.size).isEqualTo(10)
+
+        for ((index, logProbabilities) in logProbabilitiesByOrder.withIndex()) {
+            for (ngram in logProbabilities.keys) {
+                assertThat(model.getLogProbability(ngram, index + 1)).isEqualTo(logProbabilities.get(ngram))
+            }
+        }
+        assertThat(model.getLogProbability(PackedNgram.pack("lte"), 3)).isEqualTo(Float.NEGATIVE_INFINITY)
+        assertThat(model.getLogProbability(PackedNgram.pack("b"), 1)).isEqualTo(Float.NEGATIVE_INFINITY)
+        assertThat(model.getLogProbability(PackedNgram.pack("上海大学的"), 5)).isEqualTo(Float.NEGATIVE_INFINITY)
+    }
+
+    @Test
+    fun `assert that trie language model returns the log-probability of the longest known prefix`() {
+        assertThat(model.getLongestPrefixLogProbability("alter", PackedNgram.pack("alter")))
+            .isEqualTo(logProbabilitiesByOrder[4].get(PackedNgram.pack("alter")))
+        assertThat(model.getLongestPrefixLogProbability("altes", PackedNgram.pack("altes")))
+            .isEqualTo(logProbabilitiesByOrder[3].get(PackedNgram.pack("alte")))
+        assertThat(model.getLongestPrefixLogProbability("ltesx", PackedNgram.pack("ltesx")))
+            .isEqualTo(logProbabilitiesByOrder[3].get(PackedNgram.pack("ltes")))
+        assertThat(model.getLongestPrefixLogProbability("lte", PackedNgram.pack("lte")))
+            .isEqualTo(logProbabilitiesByOrder[1].get(PackedNgram.pack("lt")))
+        assertThat(model.getLongestPrefixLogProbability("上海大学是", PackedNgram.pack("上海大学是")))
+            .isEqualTo(logProbabilitiesByOrder[4].get(PackedNgram.pack("上海大学是")))
+        assertThat(model.getLongestPrefixLogProbability("上海大学的", PackedNgram.pack("上海大学的")))
+            .isEqualTo(logProbabilitiesByOrder[0].get(PackedNgram.pack("上")))
+        assertThat(model.getLongestPrefixLogProbability("bcd", PackedNgram.pack("bcd")))
+            .isEqualTo(Float.NEGATIVE_INFINITY)
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright © 2018-today Peter M. Stahl pemistahl@gmail.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either expressed or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.pemistahl.lingua.internal
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+
+class WeakValueMapTest {
+
+    @Test
+    fun `assert that a referenced value is shared by all lookups of its key`() {
+        val map = WeakValueMap<String, MutableList<String>>()
+
+        val value = map.computeIfAbsent("a") { mutableListOf(it) }
+
+        assertThat(map.computeIfAbsent("a") { mutableListOf("other") }).isSameAs(value)
+        assertThat(map["a"]).isSameAs(value)
+    }
+
+    @Test
+    fun `assert that values are created per key`() {
+        val map = WeakValueMap<String, MutableList<String>>()
+
+        val firstValue = map.computeIfAbsent("a") { mutableListOf(it) }
+        val secondValue = map.computeIfAbsent("b") { mutableListOf(it) }
+
+        assertThat(firstValue).containsExactly("a")
+        assertThat(secondValue).containsExactly("b")
+        assertThat(map["c"]).isNull()
+    }
+}